@@ -0,0 +1,65 @@
+package org.cossbow.dag;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 图构建、环检测和拓扑排序
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class DAGGraphBenchmark {
+
+    @Param({"CHAIN", "FAN", "LAYERED", "DIAMOND"})
+    GraphShape shape;
+
+    @Param({"10", "1000", "100000", "1000000"})
+    int size;
+
+    List<Integer> nodes;
+    Set<Integer> nodeSet;
+    List<Map.Entry<Integer, Integer>> edges;
+
+    @Setup
+    public void setup() {
+        nodes = shape.nodes(size);
+        nodeSet = Set.copyOf(nodes);
+        edges = shape.edges(size);
+    }
+
+    @Benchmark
+    public DAGGraph<Integer> construct() {
+        return new DAGGraph<>(nodes, edges);
+    }
+
+    @Benchmark
+    public DAGGraph<Integer> builder() {
+        var builder = new DAGGraph.Builder<Integer>(size);
+        for (var edge : edges) {
+            builder.addEdge(edge.getKey(), edge.getValue());
+        }
+        for (var node : nodes) {
+            builder.addNode(node);
+        }
+        return builder.build();
+    }
+
+    @Benchmark
+    public boolean checkAcyclic() {
+        return DAGUtil.checkAcyclic(nodeSet, edges);
+    }
+
+    @Benchmark
+    public Map.Entry<Boolean, List<Integer>> topologicalSort() {
+        return DAGUtil.topologicalSort(nodeSet, edges);
+    }
+
+}
@@ -0,0 +1,48 @@
+package org.cossbow.dag;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+
+/**
+ * DAGTask端到端的调度开销，handler不做任何事情且同步完成；
+ * 分配率用 -prof gc 查看
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class DAGTaskBenchmark {
+
+    static final CompletableFuture<Object> DONE =
+            CompletableFuture.completedFuture(Boolean.TRUE);
+
+    @Param({"CHAIN", "FAN", "LAYERED", "DIAMOND"})
+    GraphShape shape;
+
+    @Param({"10", "1000", "100000"})
+    int size;
+
+    DAGPlan<Integer> plan;
+
+    final BiFunction<Integer, Map<Integer, Object>,
+            CompletableFuture<Object>> handler = (k, results) -> DONE;
+
+    @Setup
+    public void setup() {
+        plan = shape.graph(size).plan();
+    }
+
+    @Benchmark
+    public Map<Integer, Object> run() {
+        var task = plan.newTask(handler);
+        task.run();
+        return task.join();
+    }
+
+}
@@ -0,0 +1,93 @@
+package org.cossbow.dag;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * 基准测试用的图形状，节点为0..size-1
+ */
+public enum GraphShape {
+    /**
+     * 单链：i -> i+1
+     */
+    CHAIN {
+        @Override
+        List<Map.Entry<Integer, Integer>> edges(int size) {
+            var edges = new ArrayList<Map.Entry<Integer, Integer>>(size);
+            for (int i = 1; i < size; i++) {
+                edges.add(Map.entry(i - 1, i));
+            }
+            return edges;
+        }
+    },
+    /**
+     * 一个头扇出到中间所有节点，再汇聚到一个尾
+     */
+    FAN {
+        @Override
+        List<Map.Entry<Integer, Integer>> edges(int size) {
+            var edges = new ArrayList<Map.Entry<Integer, Integer>>(size * 2);
+            int tail = size - 1;
+            for (int i = 1; i < tail; i++) {
+                edges.add(Map.entry(0, i));
+                edges.add(Map.entry(i, tail));
+            }
+            return edges;
+        }
+    },
+    /**
+     * 随机分层：约sqrt(size)层，每个节点连到下一层随机的3个节点
+     */
+    LAYERED {
+        @Override
+        List<Map.Entry<Integer, Integer>> edges(int size) {
+            var rand = new Random(size);
+            int width = Math.max(1, (int) Math.sqrt(size));
+            var edges = new ArrayList<Map.Entry<Integer, Integer>>(size * 3);
+            for (int i = 0; i + width < size; i++) {
+                int layerStart = (i / width + 1) * width;
+                int layerEnd = Math.min(size, layerStart + width);
+                if (layerStart >= layerEnd) break;
+                int from = i;
+                rand.ints(3, layerStart, layerEnd).distinct()
+                        .forEach(j -> edges.add(Map.entry(from, j)));
+            }
+            return edges;
+        }
+    },
+    /**
+     * 菱形格子：sqrt(size)*sqrt(size)的网格，向右和向下连边
+     */
+    DIAMOND {
+        @Override
+        List<Map.Entry<Integer, Integer>> edges(int size) {
+            int width = Math.max(1, (int) Math.sqrt(size));
+            var edges = new ArrayList<Map.Entry<Integer, Integer>>(size * 2);
+            for (int i = 0; i < size; i++) {
+                if ((i + 1) % width != 0 && i + 1 < size) {
+                    edges.add(Map.entry(i, i + 1));
+                }
+                if (i + width < size) {
+                    edges.add(Map.entry(i, i + width));
+                }
+            }
+            return edges;
+        }
+    },
+    ;
+
+    abstract List<Map.Entry<Integer, Integer>> edges(int size);
+
+    List<Integer> nodes(int size) {
+        return IntStream.range(0, size).boxed().collect(Collectors.toList());
+    }
+
+    DAGGraph<Integer> graph(int size) {
+        return new DAGGraph<>(nodes(size), edges(size));
+    }
+
+}
@@ -0,0 +1,46 @@
+package org.cossbow.dag;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * <h3>Key和结果的二进制编码</h3>
+ * <div>用于保存和加载DAGGraph的Key，以及{@link DAGFileJournal}中的Key和结果，
+ * decode(encode(v))必须与v相等</div>
+ */
+public interface DAGCodec<T> {
+
+    byte[] encode(T value);
+
+    T decode(byte[] bytes);
+
+
+    static <T> DAGCodec<T> of(Function<? super T, byte[]> encoder,
+                              Function<byte[], ? extends T> decoder) {
+        Objects.requireNonNull(encoder);
+        Objects.requireNonNull(decoder);
+        return new DAGCodec<>() {
+            @Override
+            public byte[] encode(T value) {
+                return encoder.apply(value);
+            }
+
+            @Override
+            public T decode(byte[] bytes) {
+                return decoder.apply(bytes);
+            }
+        };
+    }
+
+    DAGCodec<String> STRING = of(s -> s.getBytes(StandardCharsets.UTF_8),
+            b -> new String(b, StandardCharsets.UTF_8));
+
+    DAGCodec<Integer> INTEGER = of(i -> ByteBuffer.allocate(Integer.BYTES).putInt(i).array(),
+            b -> ByteBuffer.wrap(b).getInt());
+
+    DAGCodec<Long> LONG = of(l -> ByteBuffer.allocate(Long.BYTES).putLong(l).array(),
+            b -> ByteBuffer.wrap(b).getLong());
+
+}
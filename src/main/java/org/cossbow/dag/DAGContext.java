@@ -0,0 +1,99 @@
+package org.cossbow.dag;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <h3>节点调用上下文</h3>
+ * <div>DAGTask调用handler期间，在当前线程上可以通过{@link #current()}取得，
+ * 异步的部分需要自己保存引用</div>
+ * <div>剩余时间取节点超时与整个任务截止时间中较早的一个，可用于设置RPC的超时</div>
+ */
+final
+public class DAGContext {
+
+    private static final ThreadLocal<DAGContext> CURRENT = new ThreadLocal<>();
+
+    private final Object key;
+    // System.nanoTime()的截止时刻，没有限制时为Long.MAX_VALUE
+    private final long deadlineNanos;
+    private volatile Object subtaskId;
+
+    DAGContext(Object key, long deadlineNanos) {
+        this.key = key;
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    /**
+     * @return 当前线程正在调用的节点上下文，不在handler调用中时返回null
+     */
+    public static DAGContext current() {
+        return CURRENT.get();
+    }
+
+    static DAGContext enter(DAGContext context) {
+        var prev = CURRENT.get();
+        CURRENT.set(context);
+        return prev;
+    }
+
+    static void exit(DAGContext prev) {
+        if (null == prev) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(prev);
+        }
+    }
+
+
+    //
+
+    public Object key() {
+        return key;
+    }
+
+    /**
+     * @return handler设置的子任务ID，DAGNodeHandler会设置为IDGenerator生成的ID
+     */
+    public Object subtaskId() {
+        return subtaskId;
+    }
+
+    /**
+     * 设置子任务ID，会出现在{@link DAGListener}的事件中
+     */
+    public void subtaskId(Object subtaskId) {
+        this.subtaskId = subtaskId;
+    }
+
+    public boolean hasDeadline() {
+        return deadlineNanos != Long.MAX_VALUE;
+    }
+
+    /**
+     * @return 剩余的纳秒数，已经超时时为0，没有限制时为Long.MAX_VALUE
+     */
+    public long remainingNanos() {
+        if (!hasDeadline()) {
+            return Long.MAX_VALUE;
+        }
+        return Math.max(0, deadlineNanos - System.nanoTime());
+    }
+
+    public long remaining(TimeUnit unit) {
+        var nanos = remainingNanos();
+        return nanos == Long.MAX_VALUE ? Long.MAX_VALUE : unit.convert(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return 剩余时间，没有限制时返回null
+     */
+    public Duration remaining() {
+        return hasDeadline() ? Duration.ofNanos(remainingNanos()) : null;
+    }
+
+    public boolean isExpired() {
+        return hasDeadline() && System.nanoTime() - deadlineNanos >= 0;
+    }
+
+}
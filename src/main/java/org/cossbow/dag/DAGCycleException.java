@@ -0,0 +1,24 @@
+package org.cossbow.dag;
+
+import java.util.List;
+
+/**
+ * <h3>图中有环</h3>
+ * <div>带着找到的一个环，按边的方向排列，最后一个节点指向第一个</div>
+ */
+public class DAGCycleException extends IllegalArgumentException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final List<?> cycle;
+
+    public DAGCycleException(List<?> cycle) {
+        super("Serious error: graph has cycle！" + cycle);
+        this.cycle = List.copyOf(cycle);
+    }
+
+    public List<?> cycle() {
+        return cycle;
+    }
+
+}
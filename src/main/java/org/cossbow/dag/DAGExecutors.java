@@ -0,0 +1,95 @@
+package org.cossbow.dag;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <h3>DAG相关的公共线程池</h3>
+ * <div>阻塞型的节点优先使用虚拟线程（JDK 21+），不支持时退回到daemon的缓存线程池</div>
+ */
+final
+public class DAGExecutors {
+    private DAGExecutors() {
+    }
+
+    private static class BlockingHolder {
+        static final ExecutorService VIRTUAL = newVirtualThreadExecutor();
+        static final ExecutorService EXECUTOR = null != VIRTUAL ? VIRTUAL :
+                Executors.newCachedThreadPool(daemonFactory("dag-blocking-"));
+    }
+
+    private static class TimerHolder {
+        static final ScheduledThreadPoolExecutor TIMER;
+
+        static {
+            TIMER = new ScheduledThreadPoolExecutor(1, daemonFactory("dag-timer-"));
+            TIMER.setRemoveOnCancelPolicy(true);
+        }
+    }
+
+    /**
+     * 共享的定时器，用于超时、重试等待等，任务本身必须很轻
+     */
+    static ScheduledExecutorService timer() {
+        return TimerHolder.TIMER;
+    }
+
+    /**
+     * 共享的阻塞型Executor，不需要关闭
+     */
+    public static ExecutorService blocking() {
+        return BlockingHolder.EXECUTOR;
+    }
+
+    /**
+     * 每个任务一个线程，运行时支持则用虚拟线程
+     */
+    public static ExecutorService newBlockingExecutor() {
+        var executor = newVirtualThreadExecutor();
+        if (null != executor) {
+            return executor;
+        }
+        return Executors.newCachedThreadPool(daemonFactory("dag-blocking-"));
+    }
+
+    /**
+     * 编译目标是11，这里通过反射调用Executors.newVirtualThreadPerTaskExecutor
+     *
+     * @return 不支持虚拟线程时返回null
+     */
+    public static ExecutorService newVirtualThreadExecutor() {
+        try {
+            var mh = MethodHandles.publicLookup().findStatic(Executors.class,
+                    "newVirtualThreadPerTaskExecutor",
+                    MethodType.methodType(ExecutorService.class));
+            return (ExecutorService) mh.invokeExact();
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            return null;
+        } catch (UnsupportedOperationException e) {
+            // 预览特性未开启
+            return null;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static boolean supportsVirtualThreads() {
+        return null != BlockingHolder.VIRTUAL;
+    }
+
+    static ThreadFactory daemonFactory(String prefix) {
+        var counter = new AtomicInteger();
+        return r -> {
+            var t = new Thread(r, prefix + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+}
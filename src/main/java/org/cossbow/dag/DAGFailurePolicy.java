@@ -0,0 +1,20 @@
+package org.cossbow.dag;
+
+/**
+ * 节点失败后DAGTask如何处理其它节点
+ */
+public enum DAGFailurePolicy {
+    /**
+     * 立即结束任务：取消正在执行的节点，尚未开始的节点不再执行
+     */
+    FAIL_FAST,
+    /**
+     * 跳过失败节点的所有后代，不相关的分支继续执行，全部结束后任务失败
+     */
+    SKIP_DESCENDANTS,
+    /**
+     * 所有节点照常执行，失败节点不出现在后继的依赖结果中，全部结束后任务失败
+     */
+    CONTINUE_ALL,
+    ;
+}
@@ -0,0 +1,334 @@
+package org.cossbow.dag;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.zip.CRC32;
+
+/**
+ * <h3>本地文件的运行日志</h3>
+ * <div>只追加的二进制文件：文件头为magic和版本，之后每条记录为
+ * int长度 + int校验和(CRC32) + int Key长度 + Key + 结果，Key和结果由DAGCodec编码</div>
+ * <div>{@link #completed}只是入队；后台线程把队列中积攒的记录一次写入并刷盘（组提交），
+ * 刷盘期间到达的记录进入下一批</div>
+ * <div>进程中途退出时最后一条记录可能不完整，打开时截掉最后一条有效记录之后的尾部；
+ * 中间损坏的记录被跳过，从之后第一条完整且校验通过的记录继续</div>
+ */
+public class DAGFileJournal<Key, Result> implements DAGJournal<Key, Result>, Closeable {
+
+    static final int MAGIC = 0x4441474A; // "DAGJ"
+    static final int VERSION = 1;
+    private static final int HEADER_BYTES = 2 * Integer.BYTES;
+    private static final int RECORD_HEADER_BYTES = 2 * Integer.BYTES;
+
+    private final FileChannel channel;
+    private final DAGCodec<Key> keyCodec;
+    private final DAGCodec<Result> resultCodec;
+    private final boolean sync;
+    // 待写入的记录，Flush表示之前的记录写完后完成
+    private final LinkedBlockingQueue<Object> queue = new LinkedBlockingQueue<>();
+    private final Thread writer;
+    // 关闭时入队，写线程处理完它之后退出
+    private final Flush closing = new Flush();
+    private volatile IOException error;
+    private volatile boolean closed;
+
+    public DAGFileJournal(Path path, DAGCodec<Key> keyCodec,
+                          DAGCodec<Result> resultCodec) throws IOException {
+        this(path, keyCodec, resultCodec, true);
+    }
+
+    /**
+     * @param sync 每批记录写入后是否刷盘，false时只写入操作系统缓存，进程退出不丢但断电会丢
+     */
+    public DAGFileJournal(Path path, DAGCodec<Key> keyCodec,
+                          DAGCodec<Result> resultCodec, boolean sync) throws IOException {
+        this.keyCodec = Objects.requireNonNull(keyCodec);
+        this.resultCodec = Objects.requireNonNull(resultCodec);
+        this.sync = sync;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            if (channel.size() == 0) {
+                var header = ByteBuffer.allocate(HEADER_BYTES).putInt(MAGIC).putInt(VERSION).flip();
+                writeFully(header, 0);
+                channel.force(true);
+            } else {
+                checkHeader();
+                // 截掉最后一条有效记录之后的尾部，之后从有效的末尾追加
+                long end = scan(null);
+                if (end < channel.size()) {
+                    channel.truncate(end);
+                }
+            }
+            channel.position(channel.size());
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+
+        this.writer = new Thread(this::writeLoop, "dag-journal-" + path.getFileName());
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+
+    //
+
+    private void checkHeader() throws IOException {
+        var header = ByteBuffer.allocate(HEADER_BYTES);
+        readFully(header, 0);
+        header.flip();
+        if (header.remaining() < HEADER_BYTES || header.getInt() != MAGIC) {
+            throw new IOException("Not a DAG journal");
+        }
+        int version = header.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported DAG journal version: " + version);
+        }
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, position);
+            if (n < 0) break;
+            position += n;
+        }
+    }
+
+    private void writeFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    /**
+     * 依次读取完整且校验通过的记录，损坏的记录逐字节向后找下一条有效的记录；
+     * 解码失败的记录跳过，报告在{@link #error()}中
+     *
+     * @param records 不为null时放入解码后的记录
+     * @return 最后一条有效记录的末尾位置
+     */
+    private long scan(Map<Key, Result> records) throws IOException {
+        long position = HEADER_BYTES, end = position, size = channel.size();
+        var header = ByteBuffer.allocate(RECORD_HEADER_BYTES);
+        var crc = new CRC32();
+        while (position + RECORD_HEADER_BYTES <= size) {
+            var body = read(position, size, header, crc);
+            if (null == body) {
+                position++;
+                continue;
+            }
+            if (null != records) {
+                var key = new byte[body.getInt()];
+                body.get(key);
+                var result = new byte[body.remaining()];
+                body.get(result);
+                try {
+                    records.put(keyCodec.decode(key), resultCodec.decode(result));
+                } catch (RuntimeException e) {
+                    // 与校验不通过的一样跳过，记录完整所以不必逐字节找下一条
+                    error = new IOException("Failed to decode the record at " + position, e);
+                }
+            }
+            position += RECORD_HEADER_BYTES + body.capacity();
+            end = position;
+        }
+        return end;
+    }
+
+    // 读取position处的记录体，长度、Key长度或者校验和不对时返回null
+    private ByteBuffer read(long position, long size, ByteBuffer header, CRC32 crc)
+            throws IOException {
+        header.clear();
+        readFully(header, position);
+        header.flip();
+        int length = header.getInt(), checksum = header.getInt();
+        if (length < Integer.BYTES || position + RECORD_HEADER_BYTES + length > size) {
+            return null;
+        }
+        // 先只读Key长度，挡掉大部分错位的位置，不必为它们读取整条记录
+        var keyLength = ByteBuffer.allocate(Integer.BYTES);
+        readFully(keyLength, position + RECORD_HEADER_BYTES);
+        int keyBytes = keyLength.flip().getInt();
+        if (keyBytes < 0 || keyBytes > length - Integer.BYTES) {
+            return null;
+        }
+        var body = ByteBuffer.allocate(length);
+        readFully(body, position + RECORD_HEADER_BYTES);
+        crc.reset();
+        crc.update(body.array());
+        return (int) crc.getValue() == checksum ? body.flip() : null;
+    }
+
+    @Override
+    public void completed(Key key, Result result) {
+        if (!closed) {
+            queue.add(new Record<>(key, result));
+        }
+    }
+
+    @Override
+    public Map<Key, Result> recover() throws IOException {
+        var records = new HashMap<Key, Result>();
+        scan(records);
+        return records;
+    }
+
+    /**
+     * @return 之前入队的记录全部写入（sync时刷盘）后完成；
+     * 上一个flush之后有记录编码失败时，以编码的异常完成，其它记录仍然写入
+     */
+    public CompletableFuture<Void> flush() {
+        var flush = new Flush();
+        if (closed) {
+            flush.completeExceptionally(new IOException("Journal closed"));
+        } else {
+            queue.add(flush);
+        }
+        return flush;
+    }
+
+    private void writeLoop() {
+        var batch = new ArrayList<>();
+        var buffer = ByteBuffer.allocate(64 * 1024);
+        var crc = new CRC32();
+        // 编码失败而跳过的记录，报告给之后的第一个flush
+        IOException skipped = null;
+        while (true) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                break;
+            }
+            queue.drainTo(batch);
+
+            var flushes = new ArrayList<Flush>();
+            var failures = new ArrayList<IOException>();
+            boolean stop = false;
+            try {
+                buffer.clear();
+                for (var item : batch) {
+                    if (item instanceof Flush) {
+                        flushes.add((Flush) item);
+                        failures.add(skipped);
+                        skipped = null;
+                        stop |= item == closing;
+                        continue;
+                    }
+                    @SuppressWarnings("unchecked")
+                    var record = (Record<Key, Result>) item;
+                    byte[] key, result;
+                    try {
+                        key = keyCodec.encode(record.key);
+                        result = resultCodec.encode(record.result);
+                    } catch (RuntimeException e) {
+                        // 只丢掉这一条，同一批的其它记录照常写入
+                        var ex = new IOException("Failed to encode the record of " + record.key, e);
+                        error = ex;
+                        if (null == skipped) {
+                            skipped = ex;
+                        } else {
+                            skipped.addSuppressed(ex);
+                        }
+                        continue;
+                    }
+                    int length = Integer.BYTES + key.length + result.length;
+                    if (buffer.remaining() < RECORD_HEADER_BYTES + length) {
+                        buffer = drain(buffer, RECORD_HEADER_BYTES + length);
+                    }
+                    crc.reset();
+                    crc.update(ByteBuffer.allocate(Integer.BYTES).putInt(key.length).flip());
+                    crc.update(key);
+                    crc.update(result);
+                    buffer.putInt(length).putInt((int) crc.getValue())
+                            .putInt(key.length).put(key).put(result);
+                }
+                drain(buffer, 0);
+                if (sync) {
+                    channel.force(false);
+                }
+                for (int i = 0; i < flushes.size(); i++) {
+                    if (null == failures.get(i)) {
+                        flushes.get(i).complete(null);
+                    } else {
+                        flushes.get(i).completeExceptionally(failures.get(i));
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                var ex = e instanceof IOException ? (IOException) e : new IOException(e);
+                error = ex;
+                for (var flush : flushes) {
+                    flush.completeExceptionally(ex);
+                }
+            }
+            batch.clear();
+            if (stop) {
+                break;
+            }
+        }
+    }
+
+    // 写出缓冲区的内容，返回能放下need字节的空缓冲区
+    private ByteBuffer drain(ByteBuffer buffer, int need) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+        return buffer.capacity() >= need ? buffer : ByteBuffer.allocate(need);
+    }
+
+    /**
+     * @return 后台写入、编码或者恢复时解码遇到的最后一个异常，没有时为null；
+     * 写入出错后的记录可能丢失，编码或者解码失败的只跳过那一条
+     */
+    public IOException error() {
+        return error;
+    }
+
+    /**
+     * 写完已经入队的记录后关闭
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        queue.add(closing);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            channel.close();
+        }
+    }
+
+
+    //
+
+    private static class Record<Key, Result> {
+        final Key key;
+        final Result result;
+
+        Record(Key key, Result result) {
+            this.key = key;
+            this.result = result;
+        }
+    }
+
+    private static class Flush extends CompletableFuture<Void> {
+    }
+
+}
@@ -1,10 +1,23 @@
 package org.cossbow.dag;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
 
 
 /**
@@ -17,50 +30,191 @@ import java.util.function.Consumer;
 final
 public class DAGGraph<Key> {
 
-    private final Set<Key> allNodes;
+    // 编译形式：每个Key分配连续的int编号，边以CSR数组存储
+    private final Object[] keys;
+    private final Map<Key, Integer> indexes;
+    // 第i个节点的后继为nextTargets[nextOffsets[i]..nextOffsets[i+1])
+    final int[] nextOffsets, nextTargets;
+    // 第i个节点的前驱为prevTargets[prevOffsets[i]..prevOffsets[i+1])
+    final int[] prevOffsets, prevTargets;
 
+    private final Set<Key> allNodes;
     private final Set<Key> heads, tails;
 
-    private final Map<Key, Set<Key>> forwardIndex;
-    private final Map<Key, Set<Key>> reverseIndex;
+    // 构建时检查环顺便得到的拓扑序，以及延迟计算的缓存
+    private final int[] topologicalOrder;
+    private volatile long[] criticalPath;
+    // 拓扑分层：[0]每层起始位置，[1]按层排列的编号
+    private volatile int[][] levels;
+    private volatile DAGReachability reachability;
+    private volatile DAGPlan<Key> plan;
+    // 按目标节点集合缓存的部分执行计划，最近最少使用的先淘汰
+    private final Map<Set<Key>, DAGPlan<Key>> partialPlans =
+            new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Set<Key>, DAGPlan<Key>> eldest) {
+                    return size() > MAX_PARTIAL_PLANS;
+                }
+            };
+    private static final int MAX_PARTIAL_PLANS = 64;
 
     public DAGGraph(Collection<Key> allNodes,
                     Iterable<Map.Entry<Key, Key>> edges) {
-        if (null == allNodes || allNodes.isEmpty()) {
+        this(intern(allNodes), edges);
+    }
+
+    private DAGGraph(Builder<Key> builder, Iterable<Map.Entry<Key, Key>> edges) {
+        this(builder.keys.toArray(), builder.indexes,
+                builder.addEdges(edges).from, builder.to, builder.edgeCount);
+    }
+
+    // 边已经转换为编号
+    private DAGGraph(Object[] keys, Map<Key, Integer> indexes,
+                     int[] from, int[] to, int edgeCount) {
+        this(keys, indexes, compile(keys.length, from, to, edgeCount), null);
+    }
+
+    /**
+     * 所有构建方式的终点
+     *
+     * @param next  后继的CSR数组：[0]为offsets，[1]为targets，每段有序且不重复
+     * @param order 已知的拓扑序，为null时计算并检查环
+     */
+    DAGGraph(Object[] keys, Map<Key, Integer> indexes, int[][] next, int[] order) {
+        if (keys.length == 0) {
             throw new IllegalArgumentException("keys empty");
         }
-        this.allNodes = Set.copyOf(allNodes);
-        if (this.allNodes.size() != allNodes.size()) {
-            throw new IllegalArgumentException("Has duplicate Key");
+        this.keys = keys;
+        this.indexes = indexes;
+        int size = keys.length;
+
+        this.nextOffsets = next[0];
+        this.nextTargets = next[1];
+        this.prevOffsets = new int[size + 1];
+        this.prevTargets = transpose(size, nextOffsets, nextTargets, prevOffsets);
+
+        if (null == order) {
+            order = DAGUtil.topologicalOrder(size, nextOffsets, nextTargets, prevOffsets);
+            this.topologicalOrder = order;
+            if (order.length < size) {
+                throw new DAGCycleException(findCycle());
+            }
+        } else {
+            this.topologicalOrder = order;
         }
 
-        var keyMap = new HashMap<Key, Key>(this.allNodes.size());
-        for (Key k : this.allNodes) {
-            keyMap.put(k, k);
+        int headCount = 0, tailCount = 0;
+        for (int i = 0; i < size; i++) {
+            if (inDegree(i) == 0) headCount++;
+            if (outDegree(i) == 0) tailCount++;
+        }
+        var heads = new int[headCount];
+        var tails = new int[tailCount];
+        headCount = tailCount = 0;
+        for (int i = 0; i < size; i++) {
+            if (inDegree(i) == 0) heads[headCount++] = i;
+            if (outDegree(i) == 0) tails[tailCount++] = i;
         }
+        this.allNodes = new KeySet(null, 0, size);
+        this.heads = new KeySet(heads, 0, headCount);
+        this.tails = new KeySet(tails, 0, tailCount);
+    }
 
-        var forward = new HashMap<Key, Set<Key>>();
-        var reverse = new HashMap<Key, Set<Key>>();
-        for (var edge : edges) {
-            Key from = keyMap.get(edge.getKey()), to = keyMap.get(edge.getValue());
-            if (from == null) {
-                throw new IllegalArgumentException("Key not exists: " + edge.getKey());
+    private static <Key> Builder<Key> intern(Collection<Key> allNodes) {
+        if (null == allNodes || allNodes.isEmpty()) {
+            throw new IllegalArgumentException("keys empty");
+        }
+        var builder = new Builder<Key>(allNodes.size());
+        for (Key key : allNodes) {
+            // 已有的Key不会增加数量，即使它就是上一个加入的
+            int size = builder.keys.size();
+            builder.add(key);
+            if (builder.keys.size() == size) {
+                throw new IllegalArgumentException("Has duplicate Key");
             }
-            if (to == null) {
-                throw new IllegalArgumentException("Key not exists: " + edge.getValue());
+        }
+        builder.sealed = true;
+        return builder;
+    }
+
+    // 计数排序展开邻接表，每段内的编号有序并去掉重复的边
+    private static int[][] compile(int size, int[] from, int[] to, int edgeCount) {
+        var offsets = new int[size + 1];
+        for (int e = 0; e < edgeCount; e++) {
+            offsets[from[e] + 1]++;
+        }
+        for (int i = 0; i < size; i++) {
+            offsets[i + 1] += offsets[i];
+        }
+        var targets = new int[edgeCount];
+        var fill = Arrays.copyOf(offsets, size);
+        for (int e = 0; e < edgeCount; e++) {
+            targets[fill[from[e]]++] = to[e];
+        }
+
+        int pos = 0;
+        for (int i = 0; i < size; i++) {
+            int start = offsets[i], end = offsets[i + 1];
+            Arrays.sort(targets, start, end);
+            offsets[i] = pos;
+            for (int j = start; j < end; j++) {
+                if (j == start || targets[j] != targets[j - 1]) {
+                    targets[pos++] = targets[j];
+                }
             }
+        }
+        offsets[size] = pos;
+        return new int[][]{offsets, pos == edgeCount ? targets : Arrays.copyOf(targets, pos)};
+    }
 
-            forward.computeIfAbsent(from, DAGUtil.hashSet()).add(to);
-            reverse.computeIfAbsent(to, DAGUtil.hashSet()).add(from);
+    // 由后继的CSR得到前驱的CSR，按编号顺序扫描，每段自然有序
+    private static int[] transpose(int size, int[] offsets, int[] targets, int[] reverseOffsets) {
+        for (int e = 0; e < offsets[size]; e++) {
+            reverseOffsets[targets[e] + 1]++;
         }
-        if (!DAGUtil.checkAcyclic(this.allNodes, forward, reverse)) {
-            throw new IllegalArgumentException("Serious error: graph has cycle！");
+        for (int i = 0; i < size; i++) {
+            reverseOffsets[i + 1] += reverseOffsets[i];
+        }
+        var reverse = new int[offsets[size]];
+        var fill = Arrays.copyOf(reverseOffsets, size);
+        for (int i = 0; i < size; i++) {
+            for (int e = offsets[i]; e < offsets[i + 1]; e++) {
+                reverse[fill[targets[e]]++] = i;
+            }
+        }
+        return reverse;
+    }
+
+    // 拓扑排序剩下的节点都在环上或者环的下游，沿着剩下的前驱往回走必然回到走过的节点
+    private List<Key> findCycle() {
+        int size = keys.length;
+        var sorted = new boolean[size];
+        for (int id : topologicalOrder) {
+            sorted[id] = true;
         }
+        int start = 0;
+        while (sorted[start]) start++;
 
-        this.forwardIndex = DAGUtil.toImmutable(forward);
-        this.reverseIndex = DAGUtil.toImmutable(reverse);
-        this.tails = Set.copyOf(DAGUtil.subtract(this.allNodes, this.forwardIndex.keySet()));
-        this.heads = Set.copyOf(DAGUtil.subtract(this.allNodes, this.reverseIndex.keySet()));
+        // 每个节点第一次走到时的步数，从1开始
+        var step = new int[size];
+        var path = new int[size + 1];
+        int count = 0, id = start;
+        while (step[id] == 0) {
+            step[id] = ++count;
+            path[count] = id;
+            for (int j = prevOffsets[id]; j < prevOffsets[id + 1]; j++) {
+                if (!sorted[prevTargets[j]]) {
+                    id = prevTargets[j];
+                    break;
+                }
+            }
+        }
+        // 逆着前驱走的，反过来就是边的方向
+        var cycle = new ArrayList<Key>(count - step[id] + 1);
+        for (int i = count; i >= step[id]; i--) {
+            cycle.add(keyAt(path[i]));
+        }
+        return cycle;
     }
 
 
@@ -79,17 +233,474 @@ public class DAGGraph<Key> {
     }
 
     public Set<Key> prev(Key key) {
-        return reverseIndex.getOrDefault(key, Set.of());
+        int index = indexOf(key);
+        return index < 0 ? Set.of() : new KeySet(prevTargets, prevOffsets[index], prevOffsets[index + 1]);
     }
 
     public Set<Key> next(Key key) {
-        return forwardIndex.getOrDefault(key, Set.of());
+        int index = indexOf(key);
+        return index < 0 ? Set.of() : new KeySet(nextTargets, nextOffsets[index], nextOffsets[index + 1]);
+    }
+
+    // 基于编号的访问，无装箱、无哈希
+
+    public int size() {
+        return keys.length;
+    }
+
+    public int indexOf(Key key) {
+        var i = indexes.get(key);
+        return null == i ? -1 : i;
+    }
+
+    @SuppressWarnings("unchecked")
+    public Key keyAt(int index) {
+        return (Key) keys[index];
+    }
+
+    public int inDegree(int index) {
+        return prevOffsets[index + 1] - prevOffsets[index];
+    }
+
+    public int outDegree(int index) {
+        return nextOffsets[index + 1] - nextOffsets[index];
+    }
+
+    /**
+     * @param index 节点编号
+     * @param i     第几个前驱，0 <= i < inDegree(index)
+     * @return 前驱的编号
+     */
+    public int prevAt(int index, int i) {
+        return prevTargets[prevOffsets[index] + i];
+    }
+
+    /**
+     * @param index 节点编号
+     * @param i     第几个后继，0 <= i < outDegree(index)
+     * @return 后继的编号
+     */
+    public int nextAt(int index, int i) {
+        return nextTargets[nextOffsets[index] + i];
+    }
+
+    // 每段编号有序，二分查找
+    boolean isPrev(int index, int prev) {
+        return Arrays.binarySearch(prevTargets, prevOffsets[index],
+                prevOffsets[index + 1], prev) >= 0;
+    }
+
+    /**
+     * @return 拓扑序排列的节点编号
+     */
+    int[] topologicalOrder() {
+        return topologicalOrder;
+    }
+
+    int[][] levels(ForkJoinPool pool) {
+        var l = levels;
+        if (null == l) {
+            levels = l = DAGUtil.topologicalLevels(keys.length,
+                    nextOffsets, nextTargets, prevOffsets, pool);
+        }
+        return l;
+    }
+
+    /**
+     * 按拓扑层次划分：第0层是头节点，其它节点在它所有前驱的下一层，即从头节点出发的最长路径长度。
+     * 同一层的节点之间没有依赖，可以整批调度。
+     * 大图在ForkJoinPool.commonPool()上逐层并行计算，结果缓存
+     *
+     * @return 每层的节点
+     */
+    public List<List<Key>> levels() {
+        var l = levels(ForkJoinPool.commonPool());
+        int[] offsets = l[0], order = l[1];
+        var result = new ArrayList<List<Key>>(offsets.length - 1);
+        for (int i = 0; i + 1 < offsets.length; i++) {
+            var level = new ArrayList<Key>(offsets[i + 1] - offsets[i]);
+            for (int j = offsets[i]; j < offsets[i + 1]; j++) {
+                level.add(keyAt(order[j]));
+            }
+            result.add(level);
+        }
+        return result;
+    }
+
+    /**
+     * @return 层数，即最长路径上的节点数
+     */
+    public int levelCount() {
+        return levels(ForkJoinPool.commonPool())[0].length - 1;
+    }
+
+    /**
+     * 逐层处理所有节点：同一层的节点在commonPool中并行处理，一层全部结束后才开始下一层，
+     * 所以处理一个节点时它的前驱都已经处理过。action抛出的异常中止遍历并抛给调用方
+     */
+    public void forEachInTopologicalOrder(Consumer<? super Key> action) {
+        forEachInTopologicalOrder(action, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * 同{@link #forEachInTopologicalOrder(Consumer)}，在指定的ForkJoinPool中处理
+     */
+    public void forEachInTopologicalOrder(Consumer<? super Key> action, ForkJoinPool pool) {
+        Objects.requireNonNull(action);
+        var l = levels(pool);
+        int[] offsets = l[0], order = l[1];
+        for (int i = 0; i + 1 < offsets.length; i++) {
+            int from = offsets[i], to = offsets[i + 1];
+            if (to - from == 1) {
+                action.accept(keyAt(order[from]));
+            } else {
+                pool.invoke(new ForEachAction(action, order, from, to));
+            }
+        }
+    }
+
+    // 并行处理order[from, to)，每个叶子任务处理少量节点，因为action可能很慢
+    private class ForEachAction extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Consumer<? super Key> action;
+        private final int[] order;
+        private final int from, to;
+
+        ForEachAction(Consumer<? super Key> action, int[] order, int from, int to) {
+            this.action = action;
+            this.order = order;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > FOR_EACH_CHUNK) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new ForEachAction(action, order, from, mid),
+                        new ForEachAction(action, order, mid, to));
+                return;
+            }
+            for (int i = from; i < to; i++) {
+                action.accept(keyAt(order[i]));
+            }
+        }
+    }
+
+    private static final int FOR_EACH_CHUNK = 16;
+
+    private DAGReachability reachability() {
+        var r = reachability;
+        if (null == r) {
+            reachability = r = new DAGReachability(this);
+        }
+        return r;
+    }
+
+    private int checkedIndex(Key key) {
+        int index = indexOf(key);
+        if (index < 0) {
+            throw new IllegalArgumentException("Key not exists: " + key);
+        }
+        return index;
+    }
+
+    private Set<Key> keySet(int[] ids) {
+        return new KeySet(ids, 0, ids.length);
+    }
+
+    /**
+     * from是否在to的上游，即存在从from到to的路径，节点自身不算。
+     * 首次查询时建立可达性索引并缓存：小图为闭包位图，大图为层次加区间标签
+     */
+    public boolean isReachable(Key from, Key to) {
+        return reachability().reaches(checkedIndex(from), checkedIndex(to));
+    }
+
+    /**
+     * @return 所有直接或者间接的前驱，不含自身
+     */
+    public Set<Key> ancestors(Key key) {
+        return keySet(reachability().ancestors(checkedIndex(key)));
+    }
+
+    /**
+     * @return 所有直接或者间接的后继，不含自身
+     */
+    public Set<Key> descendants(Key key) {
+        return keySet(reachability().descendants(checkedIndex(key)));
+    }
+
+    /**
+     * @return 编译好的执行计划，首次调用时创建，之后共用
+     */
+    public DAGPlan<Key> plan() {
+        var p = plan;
+        if (null == p) {
+            plan = p = new DAGPlan<>(this);
+        }
+        return p;
+    }
+
+    /**
+     * 只执行targets及其所有祖先的计划，其它节点不调用handler，也不出现在结果中；
+     * 按目标集合缓存，相同的集合重复调用直接返回
+     *
+     * @param targets 需要结果的节点
+     */
+    public DAGPlan<Key> plan(Collection<Key> targets) {
+        if (null == targets || targets.isEmpty()) {
+            throw new IllegalArgumentException("targets empty");
+        }
+        var set = Set.copyOf(targets);
+        synchronized (partialPlans) {
+            var p = partialPlans.get(set);
+            if (null != p) {
+                return p;
+            }
+        }
+        // 闭包在锁外计算，并发时可能重复计算，结果相同
+        var p = new DAGPlan<>(this, set);
+        synchronized (partialPlans) {
+            var prev = partialPlans.putIfAbsent(set, p);
+            return null == prev ? p : prev;
+        }
+    }
+
+    /**
+     * 每个节点到尾节点的最长路径（包含自身），每个节点的代价为1
+     *
+     * @return 按节点编号存储，不要修改
+     */
+    long[] criticalPath() {
+        var path = criticalPath;
+        if (null == path) {
+            criticalPath = path = criticalPath(k -> 1);
+        }
+        return path;
+    }
+
+    /**
+     * 每个节点到尾节点的最长路径（包含自身的代价），即从该节点开始的剩余关键路径长度
+     *
+     * @param cost 节点的代价，如预估或者统计的耗时
+     * @return 按节点编号存储
+     */
+    public long[] criticalPath(ToLongFunction<? super Key> cost) {
+        var order = topologicalOrder();
+        var path = new long[keys.length];
+        for (int i = order.length - 1; i >= 0; i--) {
+            int id = order[i];
+            long max = 0;
+            for (int j = nextOffsets[id]; j < nextOffsets[id + 1]; j++) {
+                max = Math.max(max, path[nextTargets[j]]);
+            }
+            path[id] = max + cost.applyAsLong(keyAt(id));
+        }
+        return path;
     }
 
     //
 
+    /**
+     * 以二进制格式保存编译好的图：Key表、CSR数组和拓扑序，带版本和CRC32校验和，
+     * 见{@link #load(Path, DAGCodec, boolean)}
+     */
+    public void save(Path path, DAGCodec<? super Key> codec) throws IOException {
+        DAGGraphFile.write(this, path, codec);
+    }
+
+    public static <Key> DAGGraph<Key> load(Path path, DAGCodec<Key> codec) throws IOException {
+        return load(path, codec, false);
+    }
+
+    /**
+     * 通过内存映射加载{@link #save}保存的图，直接使用保存的邻接数组和拓扑序，不再检查环；
+     * 文件损坏或格式不对时抛出IOException
+     *
+     * @param trusted 为true时跳过校验和与结构检查，只用于自己写出且未被改动的文件
+     */
+    public static <Key> DAGGraph<Key> load(Path path, DAGCodec<Key> codec,
+                                           boolean trusted) throws IOException {
+        return DAGGraphFile.read(path, codec, trusted);
+    }
+
+    /**
+     * 广度优先遍历，注意不是拓扑序：节点可能在它的某些前驱之前被访问，
+     * 需要拓扑序时用{@link #forEachInTopologicalOrder(Consumer)}
+     */
     public void bfs(Consumer<Key> consumer) {
-        DAGUtil.bfs(allNodes, forwardIndex, reverseIndex, consumer);
+        var queue = new int[keys.length];
+        var traveled = new boolean[keys.length];
+        int tail = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (inDegree(i) == 0) {
+                queue[tail++] = i;
+                traveled[i] = true;
+            }
+        }
+        for (int head = 0; head < tail; head++) {
+            int id = queue[head];
+            consumer.accept(keyAt(id));
+            for (int j = nextOffsets[id]; j < nextOffsets[id + 1]; j++) {
+                int next = nextTargets[j];
+                if (!traveled[next]) {
+                    traveled[next] = true;
+                    queue[tail++] = next;
+                }
+            }
+        }
+    }
+
+
+    //
+
+    // 编号数组的一段作为Key的只读集合，ids为null时表示[from, to)的全部编号
+    private class KeySet extends AbstractSet<Key> {
+        private final int[] ids;
+        private final int from, to;
+
+        KeySet(int[] ids, int from, int to) {
+            this.ids = ids;
+            this.from = from;
+            this.to = to;
+        }
+
+        private int idAt(int i) {
+            return null == ids ? i : ids[i];
+        }
+
+        @Override
+        public int size() {
+            return to - from;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public boolean contains(Object o) {
+            var i = indexes.get((Key) o);
+            if (null == i) {
+                return false;
+            }
+            // 各段内的编号都是有序的
+            return null == ids ? i >= from && i < to :
+                    Arrays.binarySearch(ids, from, to, i) >= 0;
+        }
+
+        @Override
+        public Iterator<Key> iterator() {
+            return new Iterator<>() {
+                private int cursor = from;
+
+                @Override
+                public boolean hasNext() {
+                    return cursor < to;
+                }
+
+                @Override
+                public Key next() {
+                    if (cursor >= to) {
+                        throw new NoSuchElementException();
+                    }
+                    return keyAt(idAt(cursor++));
+                }
+            };
+        }
+    }
+
+    /**
+     * <h3>逐个添加节点和边的构建方式</h3>
+     * <div>Key在添加时就转换为编号，边以两个int数组存储，不创建任何中间集合，适合很大的图</div>
+     */
+    final
+    public static class Builder<Key> {
+        private final List<Key> keys;
+        private final HashMap<Key, Integer> indexes;
+        private int[] from, to;
+        private int edgeCount;
+        // 从节点集合构建时不允许边引入新的Key
+        private boolean sealed;
+        // build之后数组交给了DAGGraph，不能再修改
+        private boolean built;
+
+        public Builder() {
+            this(16);
+        }
+
+        /**
+         * @param expectedSize 预计的节点数量
+         */
+        public Builder(int expectedSize) {
+            this.keys = new ArrayList<>(expectedSize);
+            this.indexes = new HashMap<>(Math.max(16, (int) (expectedSize / 0.75f) + 1));
+            this.from = new int[Math.max(16, expectedSize)];
+            this.to = new int[from.length];
+        }
+
+        // 返回Key的编号，新的Key分配下一个编号
+        private int add(Key key) {
+            if (built) {
+                throw new IllegalStateException("Already built");
+            }
+            Objects.requireNonNull(key);
+            var index = indexes.putIfAbsent(key, keys.size());
+            if (null != index) {
+                return index;
+            }
+            keys.add(key);
+            return keys.size() - 1;
+        }
+
+        private int indexOf(Key key) {
+            if (!sealed) {
+                return add(key);
+            }
+            var index = indexes.get(key);
+            if (null == index) {
+                throw new IllegalArgumentException("Key not exists: " + key);
+            }
+            return index;
+        }
+
+        public Builder<Key> addNode(Key key) {
+            add(key);
+            return this;
+        }
+
+        /**
+         * 添加一条边，不存在的Key自动添加为节点；重复的边只保留一条
+         */
+        public Builder<Key> addEdge(Key from, Key to) {
+            int f = indexOf(from), t = indexOf(to);
+            if (edgeCount == this.from.length) {
+                int capacity = edgeCount + (edgeCount >> 1) + 1;
+                this.from = Arrays.copyOf(this.from, capacity);
+                this.to = Arrays.copyOf(this.to, capacity);
+            }
+            this.from[edgeCount] = f;
+            this.to[edgeCount] = t;
+            edgeCount++;
+            return this;
+        }
+
+        private Builder<Key> addEdges(Iterable<Map.Entry<Key, Key>> edges) {
+            for (var edge : edges) {
+                addEdge(edge.getKey(), edge.getValue());
+            }
+            return this;
+        }
+
+        /**
+         * @throws DAGCycleException 有环
+         */
+        public DAGGraph<Key> build() {
+            if (built) {
+                throw new IllegalStateException("Already built");
+            }
+            built = true;
+            return new DAGGraph<>(keys.toArray(), indexes, from, to, edgeCount);
+        }
     }
 
 }
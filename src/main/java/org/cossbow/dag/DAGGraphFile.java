@@ -0,0 +1,180 @@
+package org.cossbow.dag;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * <h3>编译好的DAGGraph的二进制格式</h3>
+ * <pre>
+ * int    magic, version, size, edgeCount, keyBytes
+ * int[]  nextOffsets[size + 1], nextTargets[edgeCount], topologicalOrder[size]
+ * Key表  每个Key：int长度 + 编码后的字节，按编号顺序，共keyBytes字节
+ * long   之前所有字节的CRC32
+ * </pre>
+ * <div>大端序。加载时通过内存映射读取，前驱由后继转置得到，不再检查环和排序</div>
+ */
+final
+class DAGGraphFile {
+    private DAGGraphFile() {
+    }
+
+    static final int MAGIC = 0x44414747; // "DAGG"
+    static final int VERSION = 1;
+    private static final int HEADER_BYTES = 5 * Integer.BYTES;
+
+    static <Key> void write(DAGGraph<Key> graph, Path path,
+                            DAGCodec<? super Key> codec) throws IOException {
+        int size = graph.size();
+        int edgeCount = graph.nextOffsets[size];
+        var encoded = new byte[size][];
+        long keyBytes = 0;
+        for (int i = 0; i < size; i++) {
+            encoded[i] = codec.encode(graph.keyAt(i));
+            keyBytes += Integer.BYTES + encoded[i].length;
+        }
+        long total = HEADER_BYTES + (long) Integer.BYTES * (size + 1 + edgeCount + size) +
+                keyBytes + Long.BYTES;
+        if (total > Integer.MAX_VALUE) {
+            throw new IOException("Graph too large: " + total + " bytes");
+        }
+
+        // 先写临时文件再替换，正在映射旧文件的进程不受影响
+        var tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (var channel = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            var buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, total);
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(size).putInt(edgeCount)
+                    .putInt((int) keyBytes);
+            var ints = buffer.asIntBuffer();
+            ints.put(graph.nextOffsets, 0, size + 1);
+            ints.put(graph.nextTargets, 0, edgeCount);
+            ints.put(graph.topologicalOrder());
+            buffer.position(buffer.position() + ints.position() * Integer.BYTES);
+            for (var bytes : encoded) {
+                buffer.putInt(bytes.length).put(bytes);
+            }
+            buffer.putLong(checksum(buffer, buffer.position()));
+            buffer.force();
+        }
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static long checksum(ByteBuffer buffer, int length) {
+        var crc = new CRC32();
+        crc.update(buffer.duplicate().position(0).limit(length));
+        return crc.getValue();
+    }
+
+    /**
+     * @param trusted 为true时跳过校验和与结构检查，只用于自己写出且未被改动的文件
+     */
+    static <Key> DAGGraph<Key> read(Path path, DAGCodec<Key> codec,
+                                    boolean trusted) throws IOException {
+        MappedByteBuffer buffer;
+        try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long length = channel.size();
+            if (length < HEADER_BYTES + Long.BYTES || length > Integer.MAX_VALUE) {
+                throw new IOException("Not a DAG file: " + path);
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+        }
+
+        if (buffer.getInt() != MAGIC) {
+            throw new IOException("Not a DAG file: " + path);
+        }
+        int version = buffer.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported DAG file version: " + version);
+        }
+        int size = buffer.getInt(), edgeCount = buffer.getInt(), keyBytes = buffer.getInt();
+        long expected = HEADER_BYTES + (long) Integer.BYTES * (size + 1 + edgeCount + size) +
+                (long) keyBytes + Long.BYTES;
+        if (size <= 0 || edgeCount < 0 || keyBytes < 0 || expected != buffer.capacity()) {
+            throw new IOException("Corrupted DAG file: bad header");
+        }
+        if (!trusted) {
+            int end = buffer.capacity() - Long.BYTES;
+            if (buffer.getLong(end) != checksum(buffer, end)) {
+                throw new IOException("Corrupted DAG file: checksum mismatch");
+            }
+        }
+
+        var offsets = new int[size + 1];
+        var targets = new int[edgeCount];
+        var order = new int[size];
+        var ints = buffer.asIntBuffer();
+        ints.get(offsets).get(targets).get(order);
+        buffer.position(buffer.position() + ints.position() * Integer.BYTES);
+        if (!trusted) {
+            validate(size, offsets, targets, order);
+        }
+
+        // Key表的长度字段不受校验和保护（trusted），每个都先和剩余的字节比较
+        int keyEnd = buffer.capacity() - Long.BYTES;
+        var keys = new Object[size];
+        Map<Key, Integer> indexes = new HashMap<>((int) (size / 0.75f) + 1);
+        for (int i = 0; i < size; i++) {
+            if (keyEnd - buffer.position() < Integer.BYTES) {
+                throw new IOException("Corrupted DAG file: bad key table");
+            }
+            int length = buffer.getInt();
+            if (length < 0 || length > keyEnd - buffer.position()) {
+                throw new IOException("Corrupted DAG file: bad key length " + length);
+            }
+            var bytes = new byte[length];
+            buffer.get(bytes);
+            Key key = codec.decode(bytes);
+            keys[i] = key;
+            if (null != indexes.put(key, i)) {
+                throw new IOException("Corrupted DAG file: duplicate key " + key);
+            }
+        }
+        if (buffer.position() != keyEnd) {
+            throw new IOException("Corrupted DAG file: bad key table");
+        }
+        return new DAGGraph<>(keys, indexes, new int[][]{offsets, targets}, order);
+    }
+
+    // 结构检查：CSR合法、每段严格递增、order是拓扑序
+    private static void validate(int size, int[] offsets, int[] targets, int[] order)
+            throws IOException {
+        if (offsets[0] != 0 || offsets[size] != targets.length) {
+            throw new IOException("Corrupted DAG file: bad offsets");
+        }
+        var position = new int[size];
+        Arrays.fill(position, -1);
+        for (int i = 0; i < size; i++) {
+            int id = order[i];
+            if (id < 0 || id >= size || position[id] >= 0) {
+                throw new IOException("Corrupted DAG file: bad order");
+            }
+            position[id] = i;
+        }
+        for (int i = 0; i < size; i++) {
+            if (offsets[i] > offsets[i + 1]) {
+                throw new IOException("Corrupted DAG file: bad offsets");
+            }
+            for (int e = offsets[i]; e < offsets[i + 1]; e++) {
+                int next = targets[e];
+                if (next < 0 || next >= size || (e > offsets[i] && next <= targets[e - 1])) {
+                    throw new IOException("Corrupted DAG file: bad edges");
+                }
+                if (position[i] >= position[next]) {
+                    throw new IOException("Corrupted DAG file: not acyclic");
+                }
+            }
+        }
+    }
+
+}
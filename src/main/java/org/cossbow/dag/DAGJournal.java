@@ -0,0 +1,24 @@
+package org.cossbow.dag;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * <h3>运行日志</h3>
+ * <div>记录成功完成的节点及其结果，进程重启后通过{@link DAGTask#resume}恢复，只重新执行未完成的节点</div>
+ * <div>默认实现见{@link DAGFileJournal}</div>
+ */
+public interface DAGJournal<Key, Result> {
+
+    /**
+     * 节点成功完成，在调度线程上同步调用，必须很快且不阻塞，一般只是入队，由后台批量写入；
+     * 抛出的异常会被忽略
+     */
+    void completed(Key key, Result result);
+
+    /**
+     * @return 已经持久化的完成节点，同一个节点有多条记录时以最后一条为准
+     */
+    Map<Key, Result> recover() throws IOException;
+
+}
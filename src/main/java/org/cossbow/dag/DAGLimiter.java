@@ -0,0 +1,101 @@
+package org.cossbow.dag;
+
+import java.util.PriorityQueue;
+import java.util.Queue;
+
+/**
+ * <h3>异步的并发限制</h3>
+ * <div>许可不足时节点排队，不阻塞线程，前面的节点结束后依次放行</div>
+ * <div>同一个实例可以被多个节点、多个DAGTask共用</div>
+ * <div>排队的节点按优先级从高到低放行，相同优先级先到先得</div>
+ */
+public class DAGLimiter {
+
+    private final int permits;
+    private int available;
+    private final Queue<Waiter> waiters = new PriorityQueue<>();
+    private long sequence;
+
+    public DAGLimiter(int permits) {
+        if (permits <= 0) {
+            throw new IllegalArgumentException("permits must be positive");
+        }
+        this.permits = permits;
+        this.available = permits;
+    }
+
+
+    //
+
+    void acquire(Runnable action) {
+        acquire(action, 0);
+    }
+
+    /**
+     * 获得许可后执行action，许可足够时在当前线程立即执行，否则排队
+     */
+    void acquire(Runnable action, long priority) {
+        synchronized (this) {
+            if (available == 0) {
+                waiters.add(new Waiter(action, priority, sequence++));
+                return;
+            }
+            available--;
+        }
+        action.run();
+    }
+
+    /**
+     * 归还许可，有排队的则直接转交给队首
+     *
+     * @throws IllegalStateException 归还的比取得的多
+     */
+    void release() {
+        Waiter next;
+        synchronized (this) {
+            next = waiters.poll();
+            if (null == next) {
+                if (available == permits) {
+                    throw new IllegalStateException("Released more permits than acquired");
+                }
+                available++;
+                return;
+            }
+        }
+        next.action.run();
+    }
+
+    public int permits() {
+        return permits;
+    }
+
+    public synchronized int available() {
+        return available;
+    }
+
+    public synchronized int queued() {
+        return waiters.size();
+    }
+
+
+    //
+
+    private static class Waiter implements Comparable<Waiter> {
+        final Runnable action;
+        final long priority;
+        final long sequence;
+
+        Waiter(Runnable action, long priority, long sequence) {
+            this.action = action;
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(Waiter o) {
+            int c = Long.compare(o.priority, priority);
+            return c != 0 ? c : Long.compare(sequence, o.sequence);
+        }
+    }
+
+}
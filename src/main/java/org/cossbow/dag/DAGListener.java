@@ -0,0 +1,54 @@
+package org.cossbow.dag;
+
+/**
+ * <h3>DAGTask的事件监听</h3>
+ * <div>时间都是System.nanoTime()，只能用于计算间隔</div>
+ * <div>在调度线程上同步调用，必须很快且不抛异常（抛出的异常会被忽略）</div>
+ * <div>subtaskId来自{@link DAGContext#subtaskId()}，handler不是DAGNodeHandler时一般为null</div>
+ */
+public interface DAGListener<Key> {
+
+    default void runStarted(long nanoTime) {
+    }
+
+    /**
+     * @param error 成功时为null，取消时为CancellationException
+     */
+    default void runFinished(long nanoTime, long elapsedNanos, Throwable error) {
+    }
+
+    /**
+     * 前驱都已结束，开始等待并发许可或者executor
+     */
+    default void nodeQueued(Key key, long nanoTime) {
+    }
+
+    /**
+     * @param waitNanos 从就绪到调用handler的时间
+     */
+    default void nodeStarted(Key key, long nanoTime, long waitNanos) {
+    }
+
+    /**
+     * @param execNanos 从调用handler到结束的时间
+     */
+    default void nodeCompleted(Key key, Object subtaskId, long nanoTime, long execNanos) {
+    }
+
+    /**
+     * @param error 返回失败结果（而不是异常）时为null
+     */
+    default void nodeFailed(Key key, Object subtaskId, long nanoTime, long execNanos,
+                            Throwable error) {
+    }
+
+    /**
+     * 已经开始的节点因超时被跳过（skipOnTimeout）时，先收到nodeCancelled
+     */
+    default void nodeSkipped(Key key, long nanoTime) {
+    }
+
+    default void nodeCancelled(Key key, Object subtaskId, long nanoTime, long execNanos) {
+    }
+
+}
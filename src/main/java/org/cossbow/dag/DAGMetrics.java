@@ -0,0 +1,208 @@
+package org.cossbow.dag;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <h3>内置的统计监听</h3>
+ * <div>按节点统计执行耗时、排队耗时、失败/跳过/取消次数和正在执行的数量，
+ * 耗时用按2的幂分桶的直方图记录，只有原子累加，可以在多个DAGTask间共用</div>
+ */
+public class DAGMetrics<Key> implements DAGListener<Key> {
+
+    private final Map<Key, NodeStats> nodes = new ConcurrentHashMap<>();
+    private final Histogram runs = new Histogram();
+    private final LongAdder failedRuns = new LongAdder();
+    private final AtomicInteger runningTasks = new AtomicInteger();
+    private final AtomicInteger runningNodes = new AtomicInteger();
+
+    private NodeStats stats(Key key) {
+        var s = nodes.get(key);
+        return null != s ? s : nodes.computeIfAbsent(key, k -> new NodeStats());
+    }
+
+
+    //
+
+    @Override
+    public void runStarted(long nanoTime) {
+        runningTasks.incrementAndGet();
+    }
+
+    @Override
+    public void runFinished(long nanoTime, long elapsedNanos, Throwable error) {
+        runningTasks.decrementAndGet();
+        runs.record(elapsedNanos);
+        if (null != error) {
+            failedRuns.increment();
+        }
+    }
+
+    @Override
+    public void nodeStarted(Key key, long nanoTime, long waitNanos) {
+        var s = stats(key);
+        s.wait.record(waitNanos);
+        s.inFlight.incrementAndGet();
+        runningNodes.incrementAndGet();
+    }
+
+    @Override
+    public void nodeCompleted(Key key, Object subtaskId, long nanoTime, long execNanos) {
+        var s = stats(key);
+        s.exec.record(execNanos);
+        s.inFlight.decrementAndGet();
+        runningNodes.decrementAndGet();
+    }
+
+    @Override
+    public void nodeFailed(Key key, Object subtaskId, long nanoTime, long execNanos,
+                           Throwable error) {
+        var s = stats(key);
+        s.exec.record(execNanos);
+        s.failed.increment();
+        s.inFlight.decrementAndGet();
+        runningNodes.decrementAndGet();
+    }
+
+    @Override
+    public void nodeSkipped(Key key, long nanoTime) {
+        stats(key).skipped.increment();
+    }
+
+    @Override
+    public void nodeCancelled(Key key, Object subtaskId, long nanoTime, long execNanos) {
+        var s = stats(key);
+        s.cancelled.increment();
+        s.inFlight.decrementAndGet();
+        runningNodes.decrementAndGet();
+    }
+
+
+    //
+
+    /**
+     * @return 节点的统计，没有运行过时返回null
+     */
+    public NodeStats node(Key key) {
+        return nodes.get(key);
+    }
+
+    public Map<Key, NodeStats> nodes() {
+        return Map.copyOf(nodes);
+    }
+
+    public Histogram runs() {
+        return runs;
+    }
+
+    public long failedRuns() {
+        return failedRuns.sum();
+    }
+
+    public int runningTasks() {
+        return runningTasks.get();
+    }
+
+    public int runningNodes() {
+        return runningNodes.get();
+    }
+
+
+    //
+
+    public static class NodeStats {
+        final Histogram exec = new Histogram();
+        final Histogram wait = new Histogram();
+        final LongAdder failed = new LongAdder();
+        final LongAdder skipped = new LongAdder();
+        final LongAdder cancelled = new LongAdder();
+        final AtomicInteger inFlight = new AtomicInteger();
+
+        /**
+         * 调用handler到结束的耗时，包括失败的
+         */
+        public Histogram exec() {
+            return exec;
+        }
+
+        /**
+         * 就绪到调用handler的耗时（并发限制排队、executor排队）
+         */
+        public Histogram queueWait() {
+            return wait;
+        }
+
+        public long failed() {
+            return failed.sum();
+        }
+
+        public long skipped() {
+            return skipped.sum();
+        }
+
+        public long cancelled() {
+            return cancelled.sum();
+        }
+
+        public int inFlight() {
+            return inFlight.get();
+        }
+    }
+
+    /**
+     * 纳秒耗时的直方图，第i个桶记录[2^(i-1), 2^i)，百分位取桶的上界，误差在2倍以内
+     */
+    public static class Histogram {
+        private final AtomicLongArray buckets = new AtomicLongArray(64);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sum = new LongAdder();
+
+        void record(long nanos) {
+            if (nanos < 0) nanos = 0;
+            buckets.incrementAndGet(64 - Long.numberOfLeadingZeros(nanos));
+            count.increment();
+            sum.add(nanos);
+        }
+
+        public long count() {
+            return count.sum();
+        }
+
+        public long totalNanos() {
+            return sum.sum();
+        }
+
+        public double meanNanos() {
+            long c = count();
+            return c == 0 ? 0 : (double) totalNanos() / c;
+        }
+
+        /**
+         * @param quantile 0到1之间，如0.99
+         */
+        public long percentileNanos(double quantile) {
+            long total = 0;
+            var counts = new long[buckets.length()];
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = buckets.get(i);
+                total += counts[i];
+            }
+            if (total == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(quantile * total);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank && counts[i] > 0) {
+                    return i == 0 ? 0 : i >= 63 ? Long.MAX_VALUE : (1L << i) - 1;
+                }
+            }
+            return Long.MAX_VALUE;
+        }
+    }
+
+}
@@ -1,8 +1,13 @@
 package org.cossbow.dag;
 
 import java.util.Map;
+import java.util.Objects;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
 import java.util.function.BiFunction;
+import java.util.function.Function;
 import java.util.function.Supplier;
 
 
@@ -13,19 +18,47 @@ public class DAGNodeHandler<ID, K, D>
     final Supplier<ID> IDGenerator;
     final TriFunction<ID, K, Map<K, DAGResult<D>>, DAGResult<D>> paramMaker;
     final TriFunction<ID, K, D, CompletableFuture<DAGResult<D>>> executor;
+    final Function<? super K, DAGRetryPolicy> retryPolicy;
 
     public DAGNodeHandler(Supplier<ID> IDGenerator,
                           TriFunction<ID, K, Map<K, DAGResult<D>>, DAGResult<D>> paramMaker,
                           TriFunction<ID, K, D, CompletableFuture<DAGResult<D>>> executor) {
+        this(IDGenerator, paramMaker, executor, null);
+    }
+
+    /**
+     * @param retryPolicy 按节点的重试策略，返回null的节点不重试
+     */
+    public DAGNodeHandler(Supplier<ID> IDGenerator,
+                          TriFunction<ID, K, Map<K, DAGResult<D>>, DAGResult<D>> paramMaker,
+                          TriFunction<ID, K, D, CompletableFuture<DAGResult<D>>> executor,
+                          Function<? super K, DAGRetryPolicy> retryPolicy) {
         this.IDGenerator = IDGenerator;
         this.paramMaker = paramMaker;
         this.executor = executor;
+        this.retryPolicy = retryPolicy;
+    }
+
+    /**
+     * @return 相同的handler，executor失败时按策略重试
+     */
+    public DAGNodeHandler<ID, K, D> withRetry(Function<? super K, DAGRetryPolicy> retryPolicy) {
+        return new DAGNodeHandler<>(IDGenerator, paramMaker, executor, retryPolicy);
+    }
+
+    public DAGNodeHandler<ID, K, D> withRetry(DAGRetryPolicy retryPolicy) {
+        Objects.requireNonNull(retryPolicy);
+        return withRetry(k -> retryPolicy);
     }
 
 
     @Override
     public CompletableFuture<DAGResult<D>> apply(K nodeKey, Map<K, DAGResult<D>> dependentResults) {
         var subtaskId = IDGenerator.get();
+        var context = DAGContext.current();
+        if (null != context) {
+            context.subtaskId(subtaskId);
+        }
         DAGResult<D> form;
         try {
             form = paramMaker.apply(subtaskId, nodeKey, dependentResults);
@@ -36,7 +69,115 @@ public class DAGNodeHandler<ID, K, D>
             return CompletableFuture.completedFuture(form);
         }
 
-        return executor.apply(subtaskId, nodeKey, form.getData());
+        var policy = null == retryPolicy ? null : retryPolicy.apply(nodeKey);
+        if (null == policy) {
+            return execute(subtaskId, nodeKey, form.getData());
+        }
+        return new Retry(policy, nodeKey, form.getData()).start(subtaskId);
+    }
+
+    private CompletableFuture<DAGResult<D>> execute(ID subtaskId, K nodeKey, D data) {
+        try {
+            return executor.apply(subtaskId, nodeKey, data);
+        } catch (Throwable e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    // 一个节点的重试过程，等待在共享定时器上，超出DAGContext的剩余时间则不再重试
+    private class Retry {
+        final DAGRetryPolicy policy;
+        final K nodeKey;
+        final D data;
+        final DAGContext context = DAGContext.current();
+        final CompletableFuture<DAGResult<D>> result = new CompletableFuture<>();
+        volatile CompletableFuture<DAGResult<D>> current;
+
+        Retry(DAGRetryPolicy policy, K nodeKey, D data) {
+            this.policy = policy;
+            this.nodeKey = nodeKey;
+            this.data = data;
+        }
+
+        CompletableFuture<DAGResult<D>> start(ID subtaskId) {
+            // 外部取消时同时取消正在执行的一次
+            result.whenComplete((r, e) -> {
+                var f = current;
+                if (result.isCancelled() && null != f) {
+                    f.cancel(true);
+                }
+            });
+            attempt(subtaskId, 1);
+            return result;
+        }
+
+        void attempt(ID subtaskId, int attempt) {
+            if (result.isDone()) {
+                return;
+            }
+            var f = execute(subtaskId, nodeKey, data);
+            current = f;
+            f.whenComplete((r, e) -> {
+                if (null == e) {
+                    result.complete(r);
+                    return;
+                }
+                if (attempt >= policy.maxAttempts() || !policy.isRetryable(e)) {
+                    result.completeExceptionally(e);
+                    return;
+                }
+                var delay = policy.delayNanos(attempt);
+                if (null != context && context.remainingNanos() <= delay) {
+                    result.completeExceptionally(e);
+                    return;
+                }
+                var nextId = subtaskId;
+                if (policy.regenerateId()) {
+                    nextId = IDGenerator.get();
+                    if (null != context) {
+                        context.subtaskId(nextId);
+                    }
+                }
+                var id = nextId;
+                // 定时线程只负责转交，重试在公共池中执行，不阻塞其它节点的定时
+                DAGExecutors.timer().schedule(() -> retry(id, attempt + 1),
+                        delay, TimeUnit.NANOSECONDS);
+            });
+        }
+
+        void retry(ID subtaskId, int attempt) {
+            try {
+                ForkJoinPool.commonPool().execute(() -> attempt(subtaskId, attempt));
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            }
+        }
+    }
+
+
+    //
+
+    /**
+     * 同步阻塞的executor（如JDBC、HTTP客户端），在{@link DAGExecutors#blocking()}中执行，
+     * 运行时支持时每个节点一个虚拟线程，不需要调整线程池大小
+     */
+    public static <ID, K, D> DAGNodeHandler<ID, K, D> blocking(
+            Supplier<ID> IDGenerator,
+            TriFunction<ID, K, Map<K, DAGResult<D>>, DAGResult<D>> paramMaker,
+            TriFunction<ID, K, D, DAGResult<D>> executor) {
+        return blocking(IDGenerator, paramMaker, executor, DAGExecutors.blocking());
+    }
+
+    public static <ID, K, D> DAGNodeHandler<ID, K, D> blocking(
+            Supplier<ID> IDGenerator,
+            TriFunction<ID, K, Map<K, DAGResult<D>>, DAGResult<D>> paramMaker,
+            TriFunction<ID, K, D, DAGResult<D>> executor,
+            Executor blockingExecutor) {
+        Objects.requireNonNull(executor);
+        Objects.requireNonNull(blockingExecutor);
+        return new DAGNodeHandler<>(IDGenerator, paramMaker, (id, key, data) ->
+                CompletableFuture.supplyAsync(() -> executor.apply(id, key, data),
+                        blockingExecutor));
     }
 
 }
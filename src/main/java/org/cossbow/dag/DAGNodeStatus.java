@@ -0,0 +1,32 @@
+package org.cossbow.dag;
+
+/**
+ * 节点在一次运行中的状态
+ */
+public enum DAGNodeStatus {
+    /**
+     * 等待前驱完成，或者在并发限制中排队
+     */
+    PENDING,
+    /**
+     * 已经调用了handler，等待结果
+     */
+    RUNNING,
+    SUCCEEDED,
+    /**
+     * handler异常，或者返回了失败的结果（如{@link DAGResult#isSuccess()}为false）
+     */
+    FAILED,
+    /**
+     * 前驱失败或被跳过，没有调用handler
+     */
+    SKIPPED,
+    CANCELLED,
+    ;
+
+    static final DAGNodeStatus[] VALUES = values();
+
+    public boolean isFinished() {
+        return this.ordinal() > RUNNING.ordinal();
+    }
+}
@@ -0,0 +1,303 @@
+package org.cossbow.dag;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
+
+/**
+ * <h3>DAGTask的运行选项</h3>
+ * <div>同一份选项可以给多个DAGTask共用，传给DAGTask之后不要再修改</div>
+ */
+public class DAGOptions<Key, Result> {
+
+    private Executor executor;
+    private Predicate<? super Key> inline = k -> false;
+    private DAGLimiter globalLimiter;
+    private Function<? super Key, DAGLimiter> nodeLimiter = k -> null;
+    private DAGFailurePolicy failurePolicy = DAGFailurePolicy.SKIP_DESCENDANTS;
+    private Predicate<? super Result> failedResult;
+    private Function<? super Key, Duration> nodeTimeout = k -> null;
+    private boolean skipOnTimeout;
+    private Duration deadline;
+    private DAGListener<? super Key> listener;
+    private boolean releaseIntermediate;
+    private Set<Key> outputs;
+    private boolean prioritized;
+    private ToLongFunction<? super Key> cost;
+    // 最近一次按cost计算的优先级，同一份选项多次运行同一个图时复用
+    private volatile Map.Entry<DAGGraph<Key>, long[]> costPriorities;
+    private Predicate<? super Key> streaming;
+    private Function<? super Result, DAGStream<?>> stream;
+    private DAGJournal<? super Key, ? super Result> journal;
+    private DAGResultCache<Key, Result> cache;
+    private BiFunction<? super Key, ? super Map<Key, Result>, ?> fingerprint;
+
+
+    //
+
+    /**
+     * 节点就绪后在此Executor中调用handler，为null时在前驱完成的线程中直接调用；
+     * 直接调用嵌套过深（同步完成的长链）时转到此Executor，为null则用ForkJoinPool.commonPool()
+     */
+    public DAGOptions<Key, Result> executor(Executor executor) {
+        this.executor = executor;
+        return this;
+    }
+
+    /**
+     * 设置了executor时，返回true的节点仍然在前驱完成的线程中直接调用，
+     * 适合很轻的转换节点，省去一次线程切换
+     */
+    public DAGOptions<Key, Result> inline(Predicate<? super Key> inline) {
+        this.inline = null == inline ? k -> false : inline;
+        return this;
+    }
+
+    /**
+     * 全局并发限制，多个DAGTask共用同一个实例时限制的是它们的总和
+     */
+    public DAGOptions<Key, Result> globalLimiter(DAGLimiter limiter) {
+        this.globalLimiter = limiter;
+        return this;
+    }
+
+    /**
+     * 按节点的并发限制，返回同一个实例的节点为一组，返回null的节点不限制；
+     * 同一个节点每次必须返回同一个实例
+     */
+    public DAGOptions<Key, Result> nodeLimiter(Function<? super Key, DAGLimiter> limiter) {
+        this.nodeLimiter = null == limiter ? k -> null : limiter;
+        return this;
+    }
+
+    /**
+     * 节点失败后的处理方式，默认{@link DAGFailurePolicy#SKIP_DESCENDANTS}
+     */
+    public DAGOptions<Key, Result> failurePolicy(DAGFailurePolicy policy) {
+        this.failurePolicy = Objects.requireNonNull(policy);
+        return this;
+    }
+
+    /**
+     * 返回true的结果视为节点失败：结果仍然保留，节点状态为FAILED，后代按失败策略跳过，
+     * 但不会让整个任务失败。handler是{@link DAGNodeHandler}时默认检查{@link DAGResult#isSuccess()}
+     */
+    public DAGOptions<Key, Result> failedResult(Predicate<? super Result> failedResult) {
+        this.failedResult = failedResult;
+        return this;
+    }
+
+    /**
+     * 节点超时，从调用handler开始计时，超时后取消handler返回的Future
+     */
+    public DAGOptions<Key, Result> nodeTimeout(Duration timeout) {
+        return nodeTimeout(k -> timeout);
+    }
+
+    /**
+     * 按节点设置超时，返回null的节点不限制
+     */
+    public DAGOptions<Key, Result> nodeTimeout(Function<? super Key, Duration> timeout) {
+        this.nodeTimeout = null == timeout ? k -> null : timeout;
+        return this;
+    }
+
+    /**
+     * 节点超时后的处理：false（默认）时节点以TimeoutException失败，按失败策略处理；
+     * true时节点视为跳过，后代也跳过，不影响任务结果
+     */
+    public DAGOptions<Key, Result> skipOnTimeout(boolean skip) {
+        this.skipOnTimeout = skip;
+        return this;
+    }
+
+    /**
+     * 整个任务的截止时间，从run()开始计时。到期后任务以TimeoutException结束，
+     * 取消正在执行的节点并释放已有的结果
+     */
+    public DAGOptions<Key, Result> deadline(Duration deadline) {
+        this.deadline = deadline;
+        return this;
+    }
+
+    /**
+     * 事件监听，为null（默认）时没有任何额外开销；内置的统计见{@link DAGMetrics}
+     */
+    public DAGOptions<Key, Result> listener(DAGListener<? super Key> listener) {
+        this.listener = listener;
+        return this;
+    }
+
+    /**
+     * 节点的所有后继都结束后立即丢弃它的结果，只保留尾节点的结果，
+     * 运行期间占用的内存取决于图的宽度而不是大小。
+     * 注意handler收到的依赖结果只在handler返回的Future完成前有效
+     */
+    public DAGOptions<Key, Result> releaseIntermediate() {
+        return releaseIntermediate(null);
+    }
+
+    /**
+     * 同{@link #releaseIntermediate()}，除尾节点外还保留outputs的结果
+     */
+    public DAGOptions<Key, Result> releaseIntermediate(Collection<Key> outputs) {
+        this.releaseIntermediate = true;
+        this.outputs = null == outputs ? null : Set.copyOf(outputs);
+        return this;
+    }
+
+    /**
+     * 按剩余关键路径长度决定就绪节点的顺序，关键路径上的节点先执行，每个节点代价为1。
+     * 同时就绪的节点按此顺序调度，在{@link DAGLimiter}中排队时也按此顺序放行，
+     * 所以线程池大小有限时，配合一个与之相同大小的globalLimiter效果最好
+     */
+    public DAGOptions<Key, Result> prioritized() {
+        return prioritized(null);
+    }
+
+    /**
+     * 同{@link #prioritized()}，以节点的代价加权，可以是预估或者统计的耗时；
+     * 计算结果缓存在选项中，统计值变化后重新调用此方法刷新
+     */
+    public DAGOptions<Key, Result> prioritized(ToLongFunction<? super Key> cost) {
+        this.prioritized = true;
+        this.cost = cost;
+        this.costPriorities = null;
+        return this;
+    }
+
+    /**
+     * 节点调用handler前先查缓存：命中的节点不占用并发许可也不经过executor，直接以缓存的结果完成；
+     * 相同的节点和指纹正在其它运行中计算时等待它的结果。
+     * fingerprint根据节点和依赖结果计算输入的指纹，需要实现equals和hashCode，
+     * 返回null的节点不使用缓存
+     */
+    public DAGOptions<Key, Result> cache(
+            DAGResultCache<Key, Result> cache,
+            BiFunction<? super Key, ? super Map<Key, Result>, ?> fingerprint) {
+        this.cache = cache;
+        this.fingerprint = null == cache ? null : Objects.requireNonNull(fingerprint);
+        return this;
+    }
+
+    /**
+     * 流式节点：handler返回的结果中带有一个{@link DAGStream}，由stream取出。
+     * handler的Future完成即视为发布，流式后继马上就绪，可以订阅前驱的DAGStream边生产边消费；
+     * DAGStream结束后节点才完成，普通后继这时才就绪，看到的是已经结束的流。
+     * 没有普通后继时DAGStream不保留完整的列表，流式后继应当在handler中订阅而不是等completion()。
+     * 发布之后节点仍然占用并发许可，取消或者超时结束DAGStream
+     *
+     * @param streaming 是否是流式节点
+     * @param stream    从结果中取出DAGStream，返回null的视为普通结果
+     */
+    public DAGOptions<Key, Result> streaming(Predicate<? super Key> streaming,
+                                             Function<? super Result, DAGStream<?>> stream) {
+        this.streaming = streaming;
+        this.stream = null == streaming ? null : Objects.requireNonNull(stream);
+        return this;
+    }
+
+    /**
+     * 每个成功完成且结果不为null的节点记录到日志，进程重启后可以用
+     * {@link DAGTask#resume}跳过已经完成的节点；日志的写入不在调度线程上进行
+     */
+    public DAGOptions<Key, Result> journal(DAGJournal<? super Key, ? super Result> journal) {
+        this.journal = journal;
+        return this;
+    }
+
+    Executor executor() {
+        return executor;
+    }
+
+    boolean isInline(Key key) {
+        return null == executor || inline.test(key);
+    }
+
+    DAGFailurePolicy failurePolicy() {
+        return failurePolicy;
+    }
+
+    Predicate<? super Result> failedResult() {
+        return failedResult;
+    }
+
+    Duration nodeTimeout(Key key) {
+        return nodeTimeout.apply(key);
+    }
+
+    boolean skipOnTimeout() {
+        return skipOnTimeout;
+    }
+
+    Duration deadline() {
+        return deadline;
+    }
+
+    DAGListener<? super Key> listener() {
+        return listener;
+    }
+
+    boolean isReleaseIntermediate() {
+        return releaseIntermediate;
+    }
+
+    Set<Key> outputs() {
+        return outputs;
+    }
+
+    Predicate<? super Key> streaming() {
+        return streaming;
+    }
+
+    DAGStream<?> stream(Result result) {
+        return null == result ? null : stream.apply(result);
+    }
+
+    DAGJournal<? super Key, ? super Result> journal() {
+        return journal;
+    }
+
+    DAGResultCache<Key, Result> cache() {
+        return cache;
+    }
+
+    Object fingerprint(Key key, Map<Key, Result> dependentResults) {
+        return fingerprint.apply(key, dependentResults);
+    }
+
+    DAGLimiter globalLimiter() {
+        return globalLimiter;
+    }
+
+    DAGLimiter nodeLimiter(Key key) {
+        return nodeLimiter.apply(key);
+    }
+
+    /**
+     * @return 按节点编号的优先级，不排序时返回null
+     */
+    long[] priorities(DAGGraph<Key> graph) {
+        if (!prioritized) {
+            return null;
+        }
+        if (null == cost) {
+            return graph.criticalPath();
+        }
+        var cached = costPriorities;
+        if (null != cached && cached.getKey() == graph) {
+            return cached.getValue();
+        }
+        var path = graph.criticalPath(cost);
+        costPriorities = Map.entry(graph, path);
+        return path;
+    }
+
+}
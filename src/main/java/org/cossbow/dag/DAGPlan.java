@@ -0,0 +1,182 @@
+package org.cossbow.dag;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiFunction;
+
+/**
+ * <h3>预编译的执行计划</h3>
+ * <div>从DAGGraph编译一次，多次运行共用：拓扑序、入度模板、头节点，
+ * 前驱和后继直接使用DAGGraph的CSR数组</div>
+ * <div>每次运行只需要复制入度模板和分配几个定长数组</div>
+ * <div>指定目标节点的计划只包含目标及其所有祖先，其它节点不执行，见{@link DAGGraph#plan(Collection)}</div>
+ */
+final
+public class DAGPlan<Key> {
+
+    private final DAGGraph<Key> graph;
+    // 拓扑序排列的节点编号
+    private final int[] order;
+    // 各节点的入度，运行时复制一份作为计数器
+    private final int[] inDegrees;
+    // 各节点的出度，释放中间结果时作为剩余消费者计数的模板
+    private final int[] outDegrees;
+    private final int[] heads;
+    // 部分执行时参与执行的节点，全图执行时为null
+    private final boolean[] active;
+    private final Set<Key> targets;
+
+    DAGPlan(DAGGraph<Key> graph) {
+        this(graph, null, null);
+    }
+
+    DAGPlan(DAGGraph<Key> graph, Set<Key> targets) {
+        this(graph, targets, closure(graph, targets));
+    }
+
+    private DAGPlan(DAGGraph<Key> graph, Set<Key> targets, boolean[] active) {
+        this.graph = graph;
+        this.targets = targets;
+        this.active = active;
+        int size = graph.size();
+        this.inDegrees = new int[size];
+        this.outDegrees = new int[size];
+        int count = 0, headCount = 0;
+        for (int i = 0; i < size; i++) {
+            if (null != active && !active[i]) continue;
+            count++;
+            // 祖先闭包中节点的前驱都在闭包中，入度不变；出度只计闭包中的后继
+            inDegrees[i] = graph.inDegree(i);
+            for (int j = 0, n = graph.outDegree(i); j < n; j++) {
+                if (isActive(graph.nextAt(i, j))) outDegrees[i]++;
+            }
+            if (inDegrees[i] == 0) headCount++;
+        }
+
+        var all = graph.topologicalOrder();
+        if (null == active) {
+            this.order = all;
+        } else {
+            this.order = new int[count];
+            count = 0;
+            for (int id : all) {
+                if (active[id]) order[count++] = id;
+            }
+            // 目标节点多计一个消费者，释放中间结果时始终保留
+            for (Key key : targets) {
+                outDegrees[graph.indexOf(key)]++;
+            }
+        }
+        this.heads = new int[headCount];
+        headCount = 0;
+        for (int id : order) {
+            if (inDegrees[id] == 0) heads[headCount++] = id;
+        }
+    }
+
+    // 目标节点及其所有祖先
+    private static <Key> boolean[] closure(DAGGraph<Key> graph, Set<Key> targets) {
+        var active = new boolean[graph.size()];
+        var stack = new int[graph.size()];
+        int top = 0;
+        for (Key key : targets) {
+            int index = graph.indexOf(key);
+            if (index < 0) {
+                throw new IllegalArgumentException("Key not exists: " + key);
+            }
+            if (!active[index]) {
+                active[index] = true;
+                stack[top++] = index;
+            }
+        }
+        while (top > 0) {
+            int index = stack[--top];
+            for (int i = 0, n = graph.inDegree(index); i < n; i++) {
+                int prev = graph.prevAt(index, i);
+                if (!active[prev]) {
+                    active[prev] = true;
+                    stack[top++] = prev;
+                }
+            }
+        }
+        return active;
+    }
+
+    public static <Key> DAGPlan<Key> of(DAGGraph<Key> graph) {
+        return Objects.requireNonNull(graph).plan();
+    }
+
+
+    //
+
+    public DAGGraph<Key> graph() {
+        return graph;
+    }
+
+    /**
+     * @return 参与执行的节点数量
+     */
+    public int size() {
+        return order.length;
+    }
+
+    /**
+     * @return 指定的目标节点，全图执行时为null
+     */
+    public Set<Key> targets() {
+        return targets;
+    }
+
+    /**
+     * @return 按拓扑序排列的参与执行的节点
+     */
+    public List<Key> topologicalOrder() {
+        var list = new ArrayList<Key>(order.length);
+        for (int id : order) {
+            list.add(graph.keyAt(id));
+        }
+        return list;
+    }
+
+    boolean isActive(int index) {
+        return null == active || active[index];
+    }
+
+    int[] order() {
+        return order;
+    }
+
+    int[] inDegrees() {
+        return inDegrees;
+    }
+
+    int[] outDegrees() {
+        return outDegrees;
+    }
+
+    int[] heads() {
+        return heads;
+    }
+
+
+    //
+
+    public <Result> DAGTask<Key, Result> newTask(
+            BiFunction<Key, Map<Key, Result>,
+                    CompletableFuture<Result>> handler) {
+        return new DAGTask<>(this, handler, new DAGOptions<>());
+    }
+
+    public <Result> DAGTask<Key, Result> newTask(
+            BiFunction<Key, Map<Key, Result>,
+                    CompletableFuture<Result>> handler,
+            DAGOptions<Key, Result> options) {
+        return new DAGTask<>(this, handler, options);
+    }
+
+}
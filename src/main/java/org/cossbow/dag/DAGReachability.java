@@ -0,0 +1,213 @@
+package org.cossbow.dag;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * <h3>可达性索引</h3>
+ * <div>小图预先计算每个节点的前驱闭包和后继闭包位图，查询O(1)；</div>
+ * <div>大图只保存每个节点的拓扑层次和一组区间标签（后序编号及子树的最小编号），
+ * 可以在O(1)内排除绝大部分不可达的情况，其余在两者的剪枝下做深度优先搜索</div>
+ */
+final
+class DAGReachability {
+
+    // 不超过这个节点数时使用位图，两份位图共占 2 * n * n / 8 字节
+    static final int BITSET_LIMIT = 4096;
+
+    private final DAGGraph<?> graph;
+    // 小图：按编号的后代和祖先位图，每个节点words个long
+    private final long[] descendants, ancestors;
+    private final int words;
+    // 大图：拓扑层次、后序编号、后代中最小的后序编号
+    private final int[] level, post, low;
+
+    DAGReachability(DAGGraph<?> graph) {
+        this.graph = graph;
+        int size = graph.size();
+        if (size <= BITSET_LIMIT) {
+            this.words = (size + 63) >>> 6;
+            this.descendants = new long[size * words];
+            this.ancestors = new long[size * words];
+            var order = graph.topologicalOrder();
+            for (int i = order.length - 1; i >= 0; i--) {
+                int id = order[i];
+                for (int j = 0, n = graph.outDegree(id); j < n; j++) {
+                    int next = graph.nextAt(id, j);
+                    or(descendants, id, next);
+                    descendants[id * words + (next >>> 6)] |= 1L << next;
+                }
+            }
+            for (int id : order) {
+                for (int j = 0, n = graph.inDegree(id); j < n; j++) {
+                    int prev = graph.prevAt(id, j);
+                    or(ancestors, id, prev);
+                    ancestors[id * words + (prev >>> 6)] |= 1L << prev;
+                }
+            }
+            this.level = this.post = this.low = null;
+        } else {
+            this.words = 0;
+            this.descendants = this.ancestors = null;
+            this.level = levels(graph);
+            this.post = new int[size];
+            this.low = new int[size];
+            label();
+        }
+    }
+
+    private void or(long[] bits, int dst, int src) {
+        int d = dst * words, s = src * words;
+        for (int w = 0; w < words; w++) {
+            bits[d + w] |= bits[s + w];
+        }
+    }
+
+    private static int[] levels(DAGGraph<?> graph) {
+        var l = graph.levels(ForkJoinPool.commonPool());
+        int[] offsets = l[0], order = l[1];
+        var level = new int[graph.size()];
+        for (int i = 0; i + 1 < offsets.length; i++) {
+            for (int j = offsets[i]; j < offsets[i + 1]; j++) {
+                level[order[j]] = i;
+            }
+        }
+        return level;
+    }
+
+    // 从头节点开始非递归的深度优先遍历，后序编号；low为自身及所有后代中最小的后序编号
+    private void label() {
+        int size = graph.size();
+        var visited = new boolean[size];
+        var stack = new int[size];
+        var cursor = new int[size];
+        int counter = 0;
+        for (int head = 0; head < size; head++) {
+            if (graph.inDegree(head) != 0) continue;
+            int top = 0;
+            stack[top++] = head;
+            visited[head] = true;
+            low[head] = Integer.MAX_VALUE;
+            while (top > 0) {
+                int id = stack[top - 1];
+                if (cursor[id] < graph.outDegree(id)) {
+                    int next = graph.nextAt(id, cursor[id]++);
+                    if (!visited[next]) {
+                        visited[next] = true;
+                        low[next] = Integer.MAX_VALUE;
+                        stack[top++] = next;
+                    } else {
+                        // 已经编号的后代直接合并
+                        low[id] = Math.min(low[id], low[next]);
+                    }
+                    continue;
+                }
+                top--;
+                post[id] = counter++;
+                low[id] = Math.min(low[id], post[id]);
+                if (top > 0) {
+                    int parent = stack[top - 1];
+                    low[parent] = Math.min(low[parent], low[id]);
+                }
+            }
+        }
+    }
+
+    // 可能可达：层次更深，且区间包含
+    private boolean mayReach(int from, int to) {
+        return level[from] < level[to] && low[from] <= low[to] && post[to] < post[from];
+    }
+
+    /**
+     * @return 是否存在从from到to的非空路径
+     */
+    boolean reaches(int from, int to) {
+        if (null != descendants) {
+            return (descendants[from * words + (to >>> 6)] & (1L << to)) != 0;
+        }
+        if (!mayReach(from, to)) {
+            return false;
+        }
+        var visited = new BitSet();
+        var stack = new int[16];
+        int top = 0;
+        stack[top++] = from;
+        while (top > 0) {
+            int id = stack[--top];
+            for (int j = 0, n = graph.outDegree(id); j < n; j++) {
+                int next = graph.nextAt(id, j);
+                if (next == to) {
+                    return true;
+                }
+                if (visited.get(next) || !mayReach(next, to)) {
+                    continue;
+                }
+                visited.set(next);
+                if (top == stack.length) {
+                    stack = Arrays.copyOf(stack, top << 1);
+                }
+                stack[top++] = next;
+            }
+        }
+        return false;
+    }
+
+    int[] descendants(int index) {
+        if (null != descendants) {
+            return bits(descendants, index);
+        }
+        return closure(index, true);
+    }
+
+    int[] ancestors(int index) {
+        if (null != ancestors) {
+            return bits(ancestors, index);
+        }
+        return closure(index, false);
+    }
+
+    private int[] bits(long[] bits, int index) {
+        int base = index * words, count = 0;
+        for (int w = 0; w < words; w++) {
+            count += Long.bitCount(bits[base + w]);
+        }
+        var ids = new int[count];
+        count = 0;
+        for (int w = 0; w < words; w++) {
+            long word = bits[base + w];
+            while (word != 0) {
+                ids[count++] = (w << 6) + Long.numberOfTrailingZeros(word);
+                word &= word - 1;
+            }
+        }
+        return ids;
+    }
+
+    // 沿后继或者前驱遍历，花费与结果及其边数成正比
+    private int[] closure(int index, boolean forward) {
+        var visited = new BitSet();
+        var found = new int[16];
+        int count = 0;
+        var stack = new int[16];
+        int top = 0;
+        stack[top++] = index;
+        while (top > 0) {
+            int id = stack[--top];
+            int n = forward ? graph.outDegree(id) : graph.inDegree(id);
+            for (int j = 0; j < n; j++) {
+                int other = forward ? graph.nextAt(id, j) : graph.prevAt(id, j);
+                if (visited.get(other)) continue;
+                visited.set(other);
+                if (count == found.length) found = Arrays.copyOf(found, count << 1);
+                found[count++] = other;
+                if (top == stack.length) stack = Arrays.copyOf(stack, top << 1);
+                stack[top++] = other;
+            }
+        }
+        found = Arrays.copyOf(found, count);
+        Arrays.sort(found);
+        return found;
+    }
+
+}
@@ -58,7 +58,7 @@ public class DAGResult<D> {
     }
 
     public static <D> DAGResult<D> error(String error) {
-        return new DAGResult<>(true, null, error);
+        return new DAGResult<>(false, null, error);
     }
 
 }
@@ -0,0 +1,264 @@
+package org.cossbow.dag;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * <h3>跨多次运行的节点结果缓存</h3>
+ * <div>以节点Key加上输入的指纹为键，指纹由{@link DAGOptions#cache}的fingerprint根据依赖结果计算</div>
+ * <div>按权重淘汰最近最少使用的结果，可以设置存活时间；失败的结果不缓存</div>
+ * <div>同一个键同时只计算一次，其它运行等待同一个计算的结果；取消只是退出等待，
+ * 所有等待的运行（包括发起计算的）都取消后才取消计算</div>
+ * <div>同一个实例可以被多个DAGTask、多个图共用</div>
+ */
+public class DAGResultCache<Key, Result> {
+
+    private final long maxWeight;
+    private ToLongFunction<? super Result> weigher = r -> 1;
+    private long ttlNanos = Long.MAX_VALUE;
+
+    // 按访问顺序排列，最前面的最久没有使用
+    private final LinkedHashMap<List<Object>, Entry<Result>> entries =
+            new LinkedHashMap<>(16, 0.75f, true);
+    // 已完成的结果的总权重
+    private long weight;
+    private long hitCount, missCount;
+
+    /**
+     * @param maxWeight 已完成结果的总权重上限，默认每个结果的权重为1，即最多缓存的数量
+     */
+    public DAGResultCache(long maxWeight) {
+        if (maxWeight <= 0) {
+            throw new IllegalArgumentException("maxWeight must be positive");
+        }
+        this.maxWeight = maxWeight;
+    }
+
+
+    //
+
+    /**
+     * 结果的权重，如估算的内存大小，不能为负数
+     */
+    public DAGResultCache<Key, Result> weigher(ToLongFunction<? super Result> weigher) {
+        this.weigher = Objects.requireNonNull(weigher);
+        return this;
+    }
+
+    /**
+     * 结果完成后的存活时间，为null时不过期
+     */
+    public DAGResultCache<Key, Result> ttl(Duration ttl) {
+        this.ttlNanos = null == ttl ? Long.MAX_VALUE : ttl.toNanos();
+        return this;
+    }
+
+
+    //
+
+    private static List<Object> cacheKey(Object key, Object fingerprint) {
+        return List.of(key, fingerprint);
+    }
+
+    private boolean expired(Entry<Result> entry, long now) {
+        return entry.done && now - entry.completedAt >= ttlNanos;
+    }
+
+    /**
+     * @return 已经成功完成且未过期的结果，没有时返回null
+     */
+    synchronized CompletableFuture<Result> getCompleted(Key key, Object fingerprint) {
+        var k = cacheKey(key, fingerprint);
+        var entry = entries.get(k);
+        // done之后在锁外完成future，两者都满足才算可用
+        if (null == entry || !entry.done || !entry.future.isDone()) {
+            return null;
+        }
+        if (expired(entry, System.nanoTime())) {
+            remove(k, entry);
+            return null;
+        }
+        hitCount++;
+        return entry.future;
+    }
+
+    /**
+     * 命中时返回缓存结果的副本，有相同的计算正在进行时等待它，否则调用loader计算
+     *
+     * @return 在缓存更新之后完成；取消它只是退出等待，最后一个等待的运行取消时才取消计算
+     */
+    CompletableFuture<Result> get(Key key, Object fingerprint,
+                                  Supplier<CompletableFuture<Result>> loader) {
+        var k = cacheKey(key, fingerprint);
+        var entry = new Entry<Result>();
+        synchronized (this) {
+            var prev = entries.get(k);
+            if (null != prev && !expired(prev, System.nanoTime())) {
+                hitCount++;
+                if (prev.done) {
+                    return prev.future.copy();
+                }
+                prev.waiters++;
+                return new Waiter(k, prev);
+            }
+            if (null != prev) {
+                remove(k, prev);
+            }
+            missCount++;
+            entries.put(k, entry);
+        }
+
+        CompletableFuture<Result> future;
+        try {
+            future = loader.get();
+        } catch (Throwable e) {
+            future = CompletableFuture.failedFuture(e);
+        }
+        synchronized (this) {
+            entry.source = future;
+        }
+        var owner = new Waiter(k, entry);
+        future.whenComplete((r, e) -> loaded(k, entry, r, e));
+        return owner;
+    }
+
+    // 一个运行退出等待，没有其它等待的运行时取消计算并删除
+    private void leave(List<Object> k, Entry<Result> entry, boolean mayInterruptIfRunning) {
+        CompletableFuture<Result> source;
+        synchronized (this) {
+            if (entry.done || --entry.waiters > 0) {
+                return;
+            }
+            source = entry.source;
+            if (entries.get(k) == entry) {
+                entries.remove(k);
+            }
+        }
+        if (null != source) {
+            source.cancel(mayInterruptIfRunning);
+        }
+    }
+
+    private void loaded(List<Object> k, Entry<Result> entry, Result r, Throwable e) {
+        synchronized (this) {
+            if (null != e) {
+                if (entries.get(k) == entry) {
+                    entries.remove(k);
+                }
+            } else if (entries.get(k) == entry) {
+                entry.done = true;
+                entry.completedAt = System.nanoTime();
+                entry.weight = Math.max(0, weigher.applyAsLong(r));
+                weight += entry.weight;
+                evict();
+            }
+        }
+        // 在锁外通知等待的运行
+        if (null == e) {
+            entry.future.complete(r);
+        } else {
+            entry.future.completeExceptionally(e);
+        }
+    }
+
+    // 从最久没有使用的开始淘汰已完成的结果，正在计算的保留
+    private void evict() {
+        var it = entries.values().iterator();
+        while (weight > maxWeight && it.hasNext()) {
+            var entry = it.next();
+            if (entry.done) {
+                it.remove();
+                weight -= entry.weight;
+            }
+        }
+    }
+
+    private void remove(List<Object> k, Entry<Result> entry) {
+        entries.remove(k);
+        if (entry.done) {
+            weight -= entry.weight;
+        }
+    }
+
+    /**
+     * 删除一个结果，正在进行的计算不受影响但完成后不再缓存
+     */
+    public synchronized void invalidate(Key key, Object fingerprint) {
+        var k = cacheKey(key, fingerprint);
+        var entry = entries.get(k);
+        if (null != entry) {
+            remove(k, entry);
+        }
+    }
+
+    public synchronized void invalidateAll() {
+        entries.clear();
+        weight = 0;
+    }
+
+    /**
+     * @return 缓存的数量，包括正在计算的
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long weight() {
+        return weight;
+    }
+
+    public synchronized long hitCount() {
+        return hitCount;
+    }
+
+    public synchronized long missCount() {
+        return missCount;
+    }
+
+
+    //
+
+    // 一个运行对进行中的计算的等待，在缓存更新之后完成
+    private class Waiter extends CompletableFuture<Result> {
+        private final List<Object> k;
+        private final Entry<Result> entry;
+
+        Waiter(List<Object> k, Entry<Result> entry) {
+            this.k = k;
+            this.entry = entry;
+            entry.future.whenComplete((r, e) -> {
+                if (null == e) {
+                    complete(r);
+                } else {
+                    completeExceptionally(e);
+                }
+            });
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            var cancelled = super.cancel(mayInterruptIfRunning);
+            if (cancelled) {
+                leave(k, entry, mayInterruptIfRunning);
+            }
+            return cancelled;
+        }
+    }
+
+    private static class Entry<Result> {
+        // 计算完成时完成，等待中的运行拿到它的副本
+        final CompletableFuture<Result> future = new CompletableFuture<>();
+        // 计算本身，以及还在等待的运行数量（包括发起计算的）
+        CompletableFuture<Result> source;
+        int waiters = 1;
+        boolean done;
+        long completedAt;
+        long weight;
+    }
+
+}
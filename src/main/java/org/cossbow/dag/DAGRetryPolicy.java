@@ -0,0 +1,111 @@
+package org.cossbow.dag;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Predicate;
+
+/**
+ * <h3>节点executor的重试策略</h3>
+ * <div>指数退避加随机抖动，等待期间不占用线程，由共享的定时器唤醒</div>
+ * <div>定时器到期后把重试交给ForkJoinPool.commonPool()，executor不在定时器线程上调用</div>
+ */
+public class DAGRetryPolicy {
+
+    private int maxAttempts = 3;
+    private Duration initialDelay = Duration.ofMillis(100);
+    private Duration maxDelay = Duration.ofSeconds(10);
+    private double multiplier = 2.0;
+    private double jitter = 0.2;
+    private Predicate<? super Throwable> retryable = e -> true;
+    private boolean regenerateId;
+
+
+    //
+
+    /**
+     * 最多执行的次数，包括第一次
+     */
+    public DAGRetryPolicy maxAttempts(int maxAttempts) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("maxAttempts must be positive");
+        }
+        this.maxAttempts = maxAttempts;
+        return this;
+    }
+
+    /**
+     * 第n次重试前等待 initialDelay * multiplier^(n-1)，不超过maxDelay
+     */
+    public DAGRetryPolicy backoff(Duration initialDelay, double multiplier, Duration maxDelay) {
+        if (multiplier < 1) {
+            throw new IllegalArgumentException("multiplier must not be less than 1");
+        }
+        this.initialDelay = Objects.requireNonNull(initialDelay);
+        this.multiplier = multiplier;
+        this.maxDelay = Objects.requireNonNull(maxDelay);
+        return this;
+    }
+
+    /**
+     * 等待时间上下随机浮动的比例，0到1之间
+     */
+    public DAGRetryPolicy jitter(double jitter) {
+        if (jitter < 0 || jitter > 1) {
+            throw new IllegalArgumentException("jitter must be in [0, 1]");
+        }
+        this.jitter = jitter;
+        return this;
+    }
+
+    /**
+     * 判断异常是否可以重试，参数已经去掉了CompletionException的包装；
+     * 取消总是不重试
+     */
+    public DAGRetryPolicy retryable(Predicate<? super Throwable> retryable) {
+        this.retryable = Objects.requireNonNull(retryable);
+        return this;
+    }
+
+    /**
+     * 重试时是否重新生成子任务ID，默认沿用第一次的ID
+     */
+    public DAGRetryPolicy regenerateId(boolean regenerateId) {
+        this.regenerateId = regenerateId;
+        return this;
+    }
+
+
+    //
+
+    int maxAttempts() {
+        return maxAttempts;
+    }
+
+    boolean regenerateId() {
+        return regenerateId;
+    }
+
+    boolean isRetryable(Throwable e) {
+        if (e instanceof CompletionException && null != e.getCause()) {
+            e = e.getCause();
+        }
+        return !(e instanceof CancellationException) && retryable.test(e);
+    }
+
+    /**
+     * @param attempt 已经执行的次数，从1开始
+     * @return 下一次执行前等待的纳秒数
+     */
+    long delayNanos(int attempt) {
+        double delay = initialDelay.toNanos() * Math.pow(multiplier, attempt - 1);
+        delay = Math.min(delay, maxDelay.toNanos());
+        if (jitter > 0) {
+            delay *= 1 + jitter * (ThreadLocalRandom.current().nextDouble() * 2 - 1);
+        }
+        return (long) delay;
+    }
+
+}
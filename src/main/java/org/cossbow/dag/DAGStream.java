@@ -0,0 +1,278 @@
+package org.cossbow.dag;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <h3>流式节点的输出</h3>
+ * <div>生产者依次emit数据块，最后complete或者fail；每个订阅者按自己的请求量从头收到全部数据块</div>
+ * <div>数据块默认全部缓存：流式后继边生产边消费，普通后继在结束后通过{@link #completion()}拿到完整的列表；
+ * 节点的后继都是流式节点时不再保留完整的列表，completion()以null完成；
+ * 每个流式后继订阅或者结束之后，只缓存还有订阅者没有收到的数据块</div>
+ * <div>取消completion()等同于以CancellationException结束</div>
+ *
+ * @see DAGOptions#streaming
+ */
+public class DAGStream<T> implements Flow.Publisher<T> {
+
+    private final CompletableFuture<List<T>> completion = new CompletableFuture<>();
+    // 以下受this保护
+    private final List<T> items = new ArrayList<>();
+    // 已经丢弃的数据块数量，订阅者的读取位置从头计数
+    private int base;
+    // 不保留时还没有订阅也没有结束的流式后继的Key，为空之后才开始丢弃；null表示保留全部
+    private HashSet<Object> awaiting;
+    // complete或者fail之后不再接受数据块，与emit在同一把锁下决定
+    private boolean closed;
+    private boolean terminated;
+    private Throwable error;
+    private final List<Subscription> subscriptions = new ArrayList<>();
+
+    public DAGStream() {
+        completion.whenComplete((v, e) -> terminate(e));
+    }
+
+
+    //
+
+    /**
+     * @return 已经complete、fail或者取消时返回false，数据块被丢弃
+     */
+    public boolean emit(T item) {
+        Objects.requireNonNull(item);
+        List<Subscription> subs;
+        synchronized (this) {
+            if (closed || completion.isDone()) {
+                return false;
+            }
+            items.add(item);
+            trim();
+            subs = List.copyOf(subscriptions);
+        }
+        for (var sub : subs) {
+            sub.drain();
+        }
+        return true;
+    }
+
+    public boolean complete() {
+        List<T> list;
+        synchronized (this) {
+            // 先关闭再取列表，已经emit成功的数据块都在列表中
+            if (!close()) {
+                return false;
+            }
+            list = null == awaiting ? List.copyOf(items) : null;
+        }
+        return completion.complete(list);
+    }
+
+    public boolean fail(Throwable e) {
+        Objects.requireNonNull(e);
+        synchronized (this) {
+            if (!close()) {
+                return false;
+            }
+        }
+        return completion.completeExceptionally(e);
+    }
+
+    private boolean close() {
+        if (closed || completion.isDone()) {
+            return false;
+        }
+        closed = true;
+        return true;
+    }
+
+    /**
+     * @return 结束后以全部数据块完成，不保留完整的列表时以null完成
+     */
+    public CompletableFuture<List<T>> completion() {
+        return completion;
+    }
+
+    /**
+     * @return 已经emit的数据块数量
+     */
+    public synchronized int size() {
+        return base + items.size();
+    }
+
+    /**
+     * @return 缓存中的数据块数量
+     */
+    public synchronized int buffered() {
+        return items.size();
+    }
+
+    /**
+     * 不再保留完整的列表：这些流式后继都订阅（在自己的handler中）或者结束之后，
+     * 丢弃所有订阅者都已经收到的数据块，之后才订阅的从还在缓存的数据块开始收
+     */
+    synchronized void discardConsumed(Collection<?> successors) {
+        if (!successors.isEmpty()) {
+            awaiting = new HashSet<>(successors);
+        }
+    }
+
+    /**
+     * 流式后继结束，不会再订阅
+     */
+    synchronized void release(Object successor) {
+        if (null != awaiting && awaiting.remove(successor)) {
+            trim();
+        }
+    }
+
+    // 丢弃所有订阅者都已经收到的数据块，攒够一半再删除，均摊下来每个数据块只移动常数次
+    private void trim() {
+        if (null == awaiting || !awaiting.isEmpty()) {
+            return;
+        }
+        int min = base + items.size();
+        for (var sub : subscriptions) {
+            min = Math.min(min, sub.index);
+        }
+        int n = min - base;
+        if (n > 0 && n >= items.size() >>> 1) {
+            items.subList(0, n).clear();
+            base = min;
+        }
+    }
+
+    private void terminate(Throwable e) {
+        if (e instanceof CompletionException && null != e.getCause()) {
+            e = e.getCause();
+        }
+        List<Subscription> subs;
+        synchronized (this) {
+            closed = terminated = true;
+            error = e;
+            subs = List.copyOf(subscriptions);
+        }
+        for (var sub : subs) {
+            sub.drain();
+        }
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super T> subscriber) {
+        var sub = new Subscription(Objects.requireNonNull(subscriber));
+        synchronized (this) {
+            sub.index = base;
+            subscriptions.add(sub);
+            // 在流式后继的handler中订阅的认领它的位置，其它订阅不影响丢弃
+            var context = DAGContext.current();
+            if (null != awaiting && null != context) {
+                awaiting.remove(context.key());
+            }
+        }
+        subscriber.onSubscribe(sub);
+        sub.drain();
+    }
+
+
+    //
+
+    // 每个订阅者独立的读取位置和请求量，同一时刻只有一个线程在投递
+    private class Subscription implements Flow.Subscription {
+        private final Flow.Subscriber<? super T> subscriber;
+        private final AtomicLong requested = new AtomicLong();
+        private final AtomicInteger wip = new AtomicInteger();
+        private volatile boolean cancelled;
+        private Throwable invalidRequest;
+        // 读取位置，受DAGStream.this保护
+        private int index;
+
+        Subscription(Flow.Subscriber<? super T> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                invalidRequest = new IllegalArgumentException("non-positive request: " + n);
+            } else {
+                requested.getAndAccumulate(n, (a, b) -> {
+                    long sum = a + b;
+                    return sum < 0 ? Long.MAX_VALUE : sum;
+                });
+            }
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            remove();
+        }
+
+        private void remove() {
+            synchronized (DAGStream.this) {
+                subscriptions.remove(this);
+                trim();
+            }
+        }
+
+        void drain() {
+            if (wip.getAndIncrement() != 0) {
+                return;
+            }
+            int missed = 1;
+            do {
+                long r = requested.get(), emitted = 0;
+                while (!cancelled) {
+                    if (null != invalidRequest) {
+                        cancel();
+                        subscriber.onError(invalidRequest);
+                        return;
+                    }
+                    T item = null;
+                    boolean done;
+                    Throwable e;
+                    synchronized (DAGStream.this) {
+                        if (index < base + items.size()) {
+                            if (emitted == r) break;
+                            item = items.get(index++ - base);
+                        }
+                        done = terminated;
+                        e = error;
+                    }
+                    if (null != item) {
+                        emitted++;
+                        subscriber.onNext(item);
+                        continue;
+                    }
+                    if (done) {
+                        cancel();
+                        if (null == e) {
+                            subscriber.onComplete();
+                        } else {
+                            subscriber.onError(e);
+                        }
+                    }
+                    break;
+                }
+                if (emitted > 0) {
+                    if (r != Long.MAX_VALUE) {
+                        requested.addAndGet(-emitted);
+                    }
+                    synchronized (DAGStream.this) {
+                        trim();
+                    }
+                }
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+    }
+
+}
@@ -1,13 +1,20 @@
 package org.cossbow.dag;
 
+import java.io.IOException;
 import java.lang.invoke.MethodHandles;
 import java.lang.invoke.VarHandle;
 import java.util.*;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.BiFunction;
+import java.util.function.Predicate;
 
 final
 public class DAGTask<Key, Result>
@@ -15,6 +22,8 @@ public class DAGTask<Key, Result>
         implements Runnable {
 
     private static final VarHandle STARTED;
+    private static final VarHandle INTS;
+    private static final VarHandle OBJECTS;
 
     static {
         MethodHandles.Lookup l = MethodHandles.lookup();
@@ -23,96 +32,847 @@ public class DAGTask<Key, Result>
         } catch (ReflectiveOperationException e) {
             throw new ExceptionInInitializerError(e);
         }
+        INTS = MethodHandles.arrayElementVarHandle(int[].class);
+        OBJECTS = MethodHandles.arrayElementVarHandle(Object[].class);
     }
 
+    // 当前线程上嵌套的直接调用层数
+    private static final ThreadLocal<int[]> INLINE_DEPTH =
+            ThreadLocal.withInitial(() -> new int[1]);
+    private static final int MAX_INLINE_DEPTH = 128;
+
+    // 节点状态，DAGNodeStatus的序号
+    private static final int STATE_PENDING = DAGNodeStatus.PENDING.ordinal();
+    private static final int STATE_RUNNING = DAGNodeStatus.RUNNING.ordinal();
+    private static final int STATE_SUCCEEDED = DAGNodeStatus.SUCCEEDED.ordinal();
+    private static final int STATE_FAILED = DAGNodeStatus.FAILED.ordinal();
+    private static final int STATE_SKIPPED = DAGNodeStatus.SKIPPED.ordinal();
+    private static final int STATE_CANCELLED = DAGNodeStatus.CANCELLED.ordinal();
+    // 内部状态：流式节点已经发布，等待DAGStream结束，对外显示为RUNNING
+    private static final int STATE_STREAMING = DAGNodeStatus.VALUES.length;
+
 
     //
 
+    private final DAGPlan<Key> plan;
     private final DAGGraph<Key> graph;
     private final BiFunction<Key, Map<Key, Result>,
             CompletableFuture<Result>> handler;
+    private final DAGOptions<Key, Result> options;
+    // 按节点编号的优先级，为null时不排序
+    private final long[] priorities;
+    // 判断结果是否表示失败，为null时不判断
+    private final Predicate<? super Result> failedResult;
+    // 记录成功完成的节点，为null时不记录
+    private final DAGJournal<? super Key, ? super Result> journal;
+    // 事件监听，为null时以下数组也为null
+    private final DAGListener<? super Key> listener;
+    // 按节点编号：就绪时刻、开始时刻、调用上下文
+    private final long[] queuedAt, startedAt;
+    private final Object[] contexts;
 
+    // 以下按节点编号存储
     // 运行状态Future
-    private final Map<Key, CompletableFuture<?>> futures =
-            new ConcurrentHashMap<>();
+    private final Object[] futures;
     // 执行结果集
-    private final Map<Key, Result> results =
-            new ConcurrentHashMap<>();
-    private final Map<Key, Result> immutableResults =
-            Collections.unmodifiableMap(results);
+    private final Object[] results;
+    // 剩余未执行的前驱数量，减为0时节点就绪
+    private final int[] pending;
+    // 节点状态
+    private final int[] states;
+    // 释放中间结果时：剩余未结束的后继数量，以及需要保留结果的节点；不释放时为null
+    private final int[] consumers;
+    private final boolean[] retained;
+    // 结果缓存，以及各节点输入的指纹；不使用缓存时为null
+    private final DAGResultCache<Key, Result> cache;
+    private final Object[] fingerprints;
+    // 增量运行时：上次运行的结果和状态、需要重新执行的节点、结果是否变化；否则为null
+    private final Object[] previous;
+    private final int[] previousStates;
+    private final boolean[] invalidated;
+    private final boolean[] changed;
+    // 开始时就绪的节点
+    private final int[] heads;
+    // 流式节点，以及已经发布的流式节点；没有流式节点时为null
+    private final boolean[] streaming;
+    private final boolean[] published;
+    // 已发布且不保留完整列表的DAGStream，流式后继结束时通知它
+    private final DAGStream<?>[] streams;
+
+    private final Map<Key, Result> resultMap = new ResultMap();
+    // 未结束的节点数量
+    private final AtomicInteger remaining;
+    // 第一个失败的异常
+    private final AtomicReference<Throwable> error =
+            new AtomicReference<>();
+    // 整个任务的截止时刻（System.nanoTime()），没有限制时为Long.MAX_VALUE
+    private long deadlineNanos = Long.MAX_VALUE;
     // 是否已经启动
     private volatile boolean started = false;
+    // 是否已经中止（失败、取消或到期）
+    private volatile boolean stopped = false;
 
 
     public DAGTask(DAGGraph<Key> graph,
                    BiFunction<Key, Map<Key, Result>,
                            CompletableFuture<Result>> handler) {
-        this.graph = Objects.requireNonNull(graph);
+        this(graph, handler, new DAGOptions<>());
+    }
+
+    public DAGTask(DAGGraph<Key> graph,
+                   BiFunction<Key, Map<Key, Result>,
+                           CompletableFuture<Result>> handler,
+                   DAGOptions<Key, Result> options) {
+        this(graph.plan(), handler, options);
+    }
+
+    public DAGTask(DAGPlan<Key> plan,
+                   BiFunction<Key, Map<Key, Result>,
+                           CompletableFuture<Result>> handler,
+                   DAGOptions<Key, Result> options) {
+        this(plan, handler, options, null, null, null, false);
+    }
+
+    /**
+     * @param priorResults 增量运行时上次的结果，按编号，不增量时为null
+     * @param priorStates  上次的状态，按编号
+     */
+    private DAGTask(DAGPlan<Key> plan,
+                    BiFunction<Key, Map<Key, Result>,
+                            CompletableFuture<Result>> handler,
+                    DAGOptions<Key, Result> options,
+                    Object[] priorResults,
+                    int[] priorStates,
+                    Collection<Key> invalidatedKeys,
+                    boolean earlyCutoff) {
+        this.plan = Objects.requireNonNull(plan);
+        this.graph = plan.graph();
         this.handler = Objects.requireNonNull(handler);
+        this.options = Objects.requireNonNull(options);
+        this.priorities = options.priorities(graph);
+        if (null != options.failedResult()) {
+            this.failedResult = options.failedResult();
+        } else if (handler instanceof DAGNodeHandler) {
+            this.failedResult = r -> !((DAGResult<?>) r).isSuccess();
+        } else {
+            this.failedResult = null;
+        }
+
+        int size = graph.size();
+        this.futures = new Object[size];
+        this.results = new Object[size];
+        this.states = new int[size];
+        if (null == priorResults) {
+            this.pending = plan.inDegrees().clone();
+            this.remaining = new AtomicInteger(plan.size());
+            this.previous = null;
+            this.previousStates = null;
+            this.invalidated = null;
+            this.changed = null;
+            this.heads = plan.heads();
+        } else {
+            this.pending = new int[size];
+            this.previous = priorResults;
+            this.previousStates = priorStates;
+            this.invalidated = new boolean[size];
+            this.changed = earlyCutoff ? new boolean[size] : null;
+            var dirty = new boolean[size];
+            for (Key key : invalidatedKeys) {
+                int index = graph.indexOf(key);
+                if (index < 0) {
+                    throw new IllegalArgumentException("Key not exists: " + key);
+                }
+                if (plan.isActive(index)) {
+                    invalidated[index] = dirty[index] = true;
+                }
+            }
+            // 按拓扑序传播：前驱需要重新执行的节点也需要，未受影响的沿用上次的结果和状态
+            int dirtyCount = 0, headCount = 0;
+            var order = plan.order();
+            var ready = new int[order.length];
+            for (int index : order) {
+                for (int i = 0, n = graph.inDegree(index); i < n; i++) {
+                    if (dirty[graph.prevAt(index, i)]) {
+                        dirty[index] = true;
+                        pending[index]++;
+                    }
+                }
+                if (dirty[index]) {
+                    dirtyCount++;
+                    if (pending[index] == 0) ready[headCount++] = index;
+                } else {
+                    results[index] = previous[index];
+                    states[index] = previousStates[index];
+                }
+            }
+            this.remaining = new AtomicInteger(dirtyCount);
+            this.heads = Arrays.copyOf(ready, headCount);
+        }
+
+        if (options.isReleaseIntermediate()) {
+            this.consumers = plan.outDegrees().clone();
+            var outputs = options.outputs();
+            if (null == outputs) {
+                this.retained = null;
+            } else {
+                this.retained = new boolean[size];
+                for (Key key : outputs) {
+                    int index = graph.indexOf(key);
+                    if (index < 0) {
+                        throw new IllegalArgumentException("Key not exists: " + key);
+                    }
+                    retained[index] = true;
+                }
+            }
+        } else {
+            this.consumers = null;
+            this.retained = null;
+        }
+
+        if (null != options.streaming()) {
+            this.streaming = new boolean[size];
+            this.published = new boolean[size];
+            this.streams = new DAGStream<?>[size];
+            for (int i = 0; i < size; i++) {
+                streaming[i] = options.streaming().test(graph.keyAt(i));
+            }
+        } else {
+            this.streaming = null;
+            this.published = null;
+            this.streams = null;
+        }
+
+        this.cache = options.cache();
+        this.fingerprints = null == cache ? null : new Object[size];
+
+        this.journal = options.journal();
+        this.listener = options.listener();
+        if (null != listener) {
+            this.queuedAt = new long[size];
+            this.startedAt = new long[size];
+            this.contexts = new Object[size];
+        } else {
+            this.queuedAt = this.startedAt = null;
+            this.contexts = null;
+        }
+    }
 
+    @SuppressWarnings("unchecked")
+    private Result resultAt(int index) {
+        return (Result) OBJECTS.getVolatile(results, index);
     }
 
-    private Map<Key, Result> dependentResults(Key key) {
-        var prev = graph.prev(key);
-        if (prev.isEmpty()) {
+    private Map<Key, Result> dependentResults(int index) {
+        if (graph.inDegree(index) == 0) {
             return Map.of();
         }
+        return new DependentMap(index);
+    }
 
-        var resultMap = new HashMap<Key, Result>(prev.size());
-        for (Key k : prev) {
-            var v = results.get(k);
-            if (null != v) {
-                resultMap.put(k, v);
+    // 前驱中有失败或跳过的，后继不再执行；CONTINUE_ALL时不跳过
+    private boolean upstreamBroken(int index) {
+        if (options.failurePolicy() == DAGFailurePolicy.CONTINUE_ALL) {
+            return false;
+        }
+        for (int i = 0, n = graph.inDegree(index); i < n; i++) {
+            int state = (int) INTS.getVolatile(states, graph.prevAt(index, i));
+            if (state == STATE_FAILED || state == STATE_SKIPPED || state == STATE_CANCELLED) {
+                return true;
             }
         }
-        return resultMap;
+        return false;
     }
 
-    private CompletableFuture<?> execHandler(Key key) {
-        return handler.apply(key, dependentResults(key))
-                .thenAccept(r -> this.results.put(key, r));
+    // 节点就绪：先取得并发许可，再直接调用或者交给executor
+    private void dispatch(int index) {
+        if (isStopped()) {
+            return;
+        }
+        if (null != changed && !invalidated[index] && !upstreamChanged(index)) {
+            reuse(index);
+            return;
+        }
+        if (upstreamBroken(index)) {
+            INTS.setVolatile(states, index, STATE_SKIPPED);
+            if (null != listener) onSkipped(index);
+            finishOne(index, false);
+            return;
+        }
+
+        if (null != listener) onQueued(index);
+        if (null != cache && resolveCached(index)) {
+            return;
+        }
+        var limiter = options.nodeLimiter(graph.keyAt(index));
+        if (null == limiter) {
+            acquireGlobal(index);
+        } else {
+            limiter.acquire(() -> acquireGlobal(index), priorityOf(index));
+        }
     }
 
-    private CompletableFuture<?> execOne(Key key) {
-        return futures.computeIfAbsent(key, this::execHandler);
+    // 前驱中是否有结果变化了的
+    private boolean upstreamChanged(int index) {
+        for (int i = 0, n = graph.inDegree(index); i < n; i++) {
+            if (changed[graph.prevAt(index, i)]) {
+                return true;
+            }
+        }
+        return false;
     }
 
-    private CompletableFuture<?> execBatch(Collection<Key> keys) {
-        var futures = keys.stream().map(this::execDependencies)
-                .toArray(CompletableFuture[]::new);
-        return CompletableFuture.allOf(futures);
+    // 提前截止：输入都没有变化，沿用上次的结果和状态
+    private void reuse(int index) {
+        OBJECTS.setVolatile(results, index, previous[index]);
+        INTS.setVolatile(states, index, previousStates[index]);
+        finishOne(index, false);
     }
 
-    private CompletableFuture<?> execDependencies(Key key) {
-        var dependencies = graph.prev(key);
-        if (dependencies.isEmpty()) {
-            return execOne(key);
+    // 缓存命中时直接完成节点，不占用许可也不经过executor
+    private boolean resolveCached(int index) {
+        var key = graph.keyAt(index);
+        Object fingerprint;
+        try {
+            fingerprint = options.fingerprint(key, dependentResults(index));
+        } catch (Throwable e) {
+            // 计算不出指纹的节点照常执行
+            return false;
+        }
+        if (null == fingerprint) {
+            return false;
+        }
+        fingerprints[index] = fingerprint;
+
+        var cached = cache.getCompleted(key, fingerprint);
+        if (null == cached) {
+            return false;
+        }
+        // 连续命中的长链同样受嵌套深度限制
+        var depth = INLINE_DEPTH.get();
+        if (depth[0] >= MAX_INLINE_DEPTH) {
+            return false;
+        }
+        depth[0]++;
+        try {
+            if (null != listener) onStarted(index, null);
+            var r = cached.join();
+            int state = stateOf(r, null);
+            INTS.setVolatile(states, index, state);
+            settle(index, state, r, null, false);
+        } finally {
+            depth[0]--;
+        }
+        return true;
+    }
+
+    private void acquireGlobal(int index) {
+        var limiter = options.globalLimiter();
+        if (null == limiter) {
+            submit(index);
         } else {
-            return execBatch(dependencies)
-                    .thenCompose(v -> execOne(key));
+            limiter.acquire(() -> submit(index), priorityOf(index));
         }
     }
 
-    private void execute() {
+    private long priorityOf(int index) {
+        return null == priorities ? 0 : priorities[index];
+    }
+
+    // 同时就绪的节点按优先级调度
+    private void dispatchAll(int[] ready, int count) {
+        if (null != priorities && count > 1) {
+            DAGUtil.sortByPriority(ready, 0, count, priorities);
+        }
+        for (int i = 0; i < count; i++) {
+            dispatch(ready[i]);
+        }
+    }
+
+    private void release(int index) {
+        var limiter = options.globalLimiter();
+        if (null != limiter) {
+            limiter.release();
+        }
+        limiter = options.nodeLimiter(graph.keyAt(index));
+        if (null != limiter) {
+            limiter.release();
+        }
+    }
+
+    private void submit(int index) {
+        if (options.isInline(graph.keyAt(index))) {
+            // 同步完成的节点会在回调中继续调用后继，嵌套太深时转为异步
+            var depth = INLINE_DEPTH.get();
+            if (depth[0] < MAX_INLINE_DEPTH) {
+                depth[0]++;
+                try {
+                    execOne(index);
+                } finally {
+                    depth[0]--;
+                }
+                return;
+            }
+        }
+
+        try {
+            executor().execute(() -> execOne(index));
+        } catch (Throwable e) {
+            // 提交失败也算开始过，之后的nodeFailed与之配对
+            INTS.setVolatile(states, index, STATE_RUNNING);
+            if (null != listener) onStarted(index, null);
+            completeOne(index, null, e);
+        }
+    }
+
+    private Executor executor() {
+        var executor = options.executor();
+        return null == executor ? ForkJoinPool.commonPool() : executor;
+    }
+
+    // 定时器线程只做状态转换和取消，之后的通知、调度和许可转交交给executor，
+    // 否则后继和其它任务排队的节点会在共享的定时器线程上执行
+    private void offTimer(Runnable action) {
+        try {
+            executor().execute(action);
+        } catch (Throwable e) {
+            ForkJoinPool.commonPool().execute(action);
+        }
+    }
+
+    private void execOne(int index) {
+        if (isStopped()) {
+            release(index);
+            return;
+        }
+
+        INTS.setVolatile(states, index, STATE_RUNNING);
+        var key = graph.keyAt(index);
+        var timeout = options.nodeTimeout(key);
+        long deadline = deadlineNanos;
+        if (null != timeout) {
+            deadline = Math.min(deadline, System.nanoTime() + timeout.toNanos());
+        }
+
+        CompletableFuture<Result> future;
+        var context = new DAGContext(key, deadline);
+        if (null != listener) onStarted(index, context);
+        var prev = DAGContext.enter(context);
         try {
-            execBatch(graph.tails()).whenComplete((v, e) -> {
-                if (null == e) {
-                    complete(results);
+            var fingerprint = null == fingerprints ? null : fingerprints[index];
+            if (null == fingerprint) {
+                future = handler.apply(key, dependentResults(index));
+            } else {
+                future = cache.get(key, fingerprint,
+                        () -> handler.apply(key, dependentResults(index)));
+            }
+        } catch (Throwable e) {
+            future = CompletableFuture.failedFuture(e);
+        } finally {
+            DAGContext.exit(prev);
+        }
+        OBJECTS.setVolatile(futures, index, future);
+
+        if (null == timeout || future.isDone()) {
+            future.whenComplete((r, e) -> completeOne(index, r, e));
+            return;
+        }
+        var f = future;
+        var timer = DAGExecutors.timer().schedule(() -> timeoutOne(index, f),
+                timeout.toNanos(), TimeUnit.NANOSECONDS);
+        future.whenComplete((r, e) -> {
+            if (!isStreaming(index)) {
+                timer.cancel(false);
+                completeOne(index, r, e);
+                return;
+            }
+            completeOne(index, r, e);
+            // 流式节点的超时到DAGStream结束为止，已发布的在DAGStream结束时取消定时器
+            var completion = published[index] ?
+                    (CompletableFuture<?>) OBJECTS.getVolatile(futures, index) : null;
+            if (null == completion) {
+                timer.cancel(false);
+            } else {
+                completion.whenComplete((v, x) -> timer.cancel(false));
+            }
+        });
+    }
+
+    private boolean isStreaming(int index) {
+        return null != streaming && streaming[index];
+    }
+
+    // 节点的Future完成，超时先一步处理过的忽略
+    private void completeOne(int index, Result r, Throwable e) {
+        if (null == e && isStreaming(index) && !published[index]) {
+            DAGStream<?> stream;
+            try {
+                stream = options.stream(r);
+            } catch (Throwable ex) {
+                completeOne(index, null, ex);
+                return;
+            }
+            if (null != stream) {
+                publish(index, r, stream);
+                return;
+            }
+        }
+
+        int state = stateOf(r, e);
+        if (!transition(index, state)) {
+            return;
+        }
+        // 已结束的Future不再需要取消，也不要通过它持有结果
+        OBJECTS.setVolatile(futures, index, null);
+        settle(index, state, r, e, true);
+    }
+
+    // 从执行中（包括已发布的流式节点）转到结束状态
+    private boolean transition(int index, int state) {
+        return INTS.compareAndSet(states, index, STATE_RUNNING, state) ||
+                (null != published && INTS.compareAndSet(states, index, STATE_STREAMING, state));
+    }
+
+    // 流式节点发布：保存结果，流式后继就绪；DAGStream结束后节点完成
+    private void publish(int index, Result r, DAGStream<?> stream) {
+        if (!INTS.compareAndSet(states, index, STATE_RUNNING, STATE_STREAMING)) {
+            return;
+        }
+        // 之后的状态转换都从STREAMING开始，finishOne通过它看到此写入
+        published[index] = true;
+        store(index, r);
+        var completion = stream.completion();
+        OBJECTS.setVolatile(futures, index, completion);
+        if (isStopped()) {
+            completion.cancel(false);
+        }
+
+        int[] ready = null;
+        int count = 0;
+        List<Key> subscribers = null;
+        boolean materialize = false;
+        for (int i = 0, n = graph.outDegree(index); i < n; i++) {
+            int next = graph.nextAt(index, i);
+            if (!plan.isActive(next)) {
+                continue;
+            }
+            if (!streaming[next]) {
+                materialize = true;
+                continue;
+            }
+            if (null == subscribers) subscribers = new ArrayList<>();
+            subscribers.add(graph.keyAt(next));
+            if ((int) INTS.getAndAdd(pending, next, -1) == 1) {
+                if (null == ready) ready = new int[n - i];
+                ready[count++] = next;
+            }
+        }
+        // 没有普通后继时不需要完整的列表，在流式后继订阅之前登记它们
+        if (!materialize && null != subscribers) {
+            stream.discardConsumed(subscribers);
+            streams[index] = stream;
+        }
+        if (count > 0) {
+            dispatchAll(ready, count);
+        }
+        completion.whenComplete((v, e) -> completeOne(index, r, e));
+    }
+
+    private int stateOf(Result r, Throwable e) {
+        if (null == e) {
+            var failed = null != failedResult && null != r && failedResult.test(r);
+            return failed ? STATE_FAILED : STATE_SUCCEEDED;
+        }
+        var cause = e instanceof CompletionException && null != e.getCause() ? e.getCause() : e;
+        return cause instanceof CancellationException ? STATE_CANCELLED : STATE_FAILED;
+    }
+
+    // 节点已经有了最终状态：通知、保存结果、推动后继
+    private void settle(int index, int state, Result r, Throwable e, boolean acquired) {
+        if (null != listener) onFinished(index, state, e);
+        if (null != cache && null == e && state == STATE_FAILED) {
+            // 失败的结果不缓存
+            var fingerprint = fingerprints[index];
+            if (null != fingerprint) cache.invalidate(graph.keyAt(index), fingerprint);
+        }
+        if (null == e) {
+            store(index, r);
+            if (null != journal && state == STATE_SUCCEEDED && null != r) {
+                record(index, r);
+            }
+            finishOne(index, acquired);
+        } else {
+            fail(index, e, acquired);
+        }
+    }
+
+    private void timeoutOne(int index, CompletableFuture<Result> future) {
+        var skip = options.skipOnTimeout();
+        if (!transition(index, skip ? STATE_SKIPPED : STATE_FAILED)) {
+            return;
+        }
+
+        // 已发布的流式节点取消的是DAGStream
+        var current = (CompletableFuture<?>) OBJECTS.getAndSet(futures, index, null);
+        future.cancel(true);
+        offTimer(() -> timedOut(index, skip, current == future ? null : current));
+    }
+
+    // 超时节点的善后：取消DAGStream、通知、推动后继、归还许可
+    private void timedOut(int index, boolean skip, CompletableFuture<?> stream) {
+        if (null != stream) {
+            stream.cancel(true);
+        }
+        if (skip) {
+            // 已经开始执行，先以取消结束这次执行，再报告跳过
+            if (null != listener) {
+                onFinished(index, STATE_CANCELLED, null);
+                onSkipped(index);
+            }
+            finishOne(index, true);
+        } else {
+            var e = new TimeoutException("Node timeout: " + graph.keyAt(index));
+            if (null != listener) onFinished(index, STATE_FAILED, e);
+            fail(index, e, true);
+        }
+    }
+
+    // 中止后不再保存结果；写入时恰好中止则撤回，不留在已经清空的结果中
+    private void store(int index, Result r) {
+        if (isStopped()) {
+            return;
+        }
+        OBJECTS.setVolatile(results, index, r);
+        if (isStopped()) {
+            OBJECTS.setVolatile(results, index, null);
+        }
+    }
+
+    private void fail(int index, Throwable e, boolean acquired) {
+        error.compareAndSet(null, e);
+        if (isStopped()) {
+            if (acquired) release(index);
+            return;
+        }
+        if (options.failurePolicy() == DAGFailurePolicy.FAIL_FAST) {
+            if (acquired) release(index);
+            abort(e);
+        } else {
+            finishOne(index, acquired);
+        }
+    }
+
+    // 节点结束（完成、失败或跳过），推动入度减为0的后继
+    private void finishOne(int index, boolean acquired) {
+        if (null != changed) {
+            // 状态和结果都与上次相同则视为没有变化，后继通过pending的原子操作看到此写入
+            changed[index] = (int) INTS.getVolatile(states, index) != previousStates[index] ||
+                    !Objects.equals(resultAt(index), previous[index]);
+        }
+        if (null != consumers) {
+            releaseUpstream(index);
+        }
+        if (null != streams && streaming[index]) {
+            releaseStreams(index);
+        }
+
+        int[] ready = null;
+        int count = 0;
+        for (int i = 0, n = graph.outDegree(index); i < n; i++) {
+            int next = graph.nextAt(index, i);
+            if (!plan.isActive(next)) {
+                continue;
+            }
+            // 流式后继在发布时已经计数
+            if (null != published && published[index] && streaming[next]) {
+                continue;
+            }
+            if ((int) INTS.getAndAdd(pending, next, -1) == 1) {
+                if (null == priorities) {
+                    dispatch(next);
                 } else {
-                    if (e instanceof CancellationException) {
-                        cancel(false);
-                    } else if (e instanceof CompletionException) {
-                        var ex = e.getCause();
-                        if (ex instanceof CancellationException) {
-                            cancel(false);
-                        } else {
-                            completeExceptionally(e);
-                        }
-                    } else {
-                        completeExceptionally(e);
-                    }
+                    if (null == ready) ready = new int[n - i];
+                    ready[count++] = next;
+                }
+            }
+        }
+        if (count > 0) {
+            dispatchAll(ready, count);
+        }
+        // 后继已经在排队，归还的许可按优先级转交
+        if (acquired) {
+            release(index);
+        }
+        if (remaining.decrementAndGet() == 0) {
+            finish();
+        }
+    }
+
+    // 流式后继结束（包括跳过、失败和缓存命中），不再占着前驱DAGStream中的数据块
+    private void releaseStreams(int index) {
+        for (int i = 0, n = graph.inDegree(index); i < n; i++) {
+            var stream = streams[graph.prevAt(index, i)];
+            if (null != stream) {
+                stream.release(graph.keyAt(index));
+            }
+        }
+    }
+
+    // 前驱的所有后继都结束后丢弃它的结果
+    private void releaseUpstream(int index) {
+        for (int i = 0, n = graph.inDegree(index); i < n; i++) {
+            int prev = graph.prevAt(index, i);
+            if ((int) INTS.getAndAdd(consumers, prev, -1) == 1 &&
+                    (null == retained || !retained[prev])) {
+                OBJECTS.setVolatile(results, prev, null);
+            }
+        }
+    }
+
+    private void finish() {
+        if (isStopped()) {
+            return;
+        }
+        var e = error.get();
+        if (null == e) {
+            complete(resultMap);
+        } else {
+            abort(e);
+        }
+    }
+
+    // 日志只是入队，写入和刷盘在日志自己的线程中进行，异常不影响调度
+    private void record(int index, Result r) {
+        try {
+            journal.completed(graph.keyAt(index), r);
+        } catch (Throwable ignored) {
+        }
+    }
+
+    // 事件通知，监听抛出的异常不影响调度
+
+    private void onRunStarted() {
+        long start = System.nanoTime();
+        try {
+            listener.runStarted(start);
+        } catch (Throwable ignored) {
+        }
+        whenComplete((v, e) -> {
+            long now = System.nanoTime();
+            if (e instanceof CompletionException && null != e.getCause()) {
+                e = e.getCause();
+            }
+            try {
+                listener.runFinished(now, now - start, e);
+            } catch (Throwable ignored) {
+            }
+        });
+    }
+
+    private void onQueued(int index) {
+        long now = System.nanoTime();
+        queuedAt[index] = now;
+        try {
+            listener.nodeQueued(graph.keyAt(index), now);
+        } catch (Throwable ignored) {
+        }
+    }
+
+    private void onStarted(int index, DAGContext context) {
+        long now = System.nanoTime();
+        startedAt[index] = now;
+        contexts[index] = context;
+        try {
+            listener.nodeStarted(graph.keyAt(index), now, now - queuedAt[index]);
+        } catch (Throwable ignored) {
+        }
+    }
+
+    private void onSkipped(int index) {
+        try {
+            listener.nodeSkipped(graph.keyAt(index), System.nanoTime());
+        } catch (Throwable ignored) {
+        }
+    }
+
+    private void onFinished(int index, int state, Throwable e) {
+        long now = System.nanoTime();
+        long elapsed = now - startedAt[index];
+        var context = (DAGContext) contexts[index];
+        var subtaskId = null == context ? null : context.subtaskId();
+        contexts[index] = null;
+        var key = graph.keyAt(index);
+        try {
+            if (state == STATE_SUCCEEDED) {
+                listener.nodeCompleted(key, subtaskId, now, elapsed);
+            } else if (state == STATE_CANCELLED) {
+                listener.nodeCancelled(key, subtaskId, now, elapsed);
+            } else {
+                if (e instanceof CompletionException && null != e.getCause()) {
+                    e = e.getCause();
                 }
-            });
+                listener.nodeFailed(key, subtaskId, now, elapsed, e);
+            }
+        } catch (Throwable ignored) {
+        }
+    }
+
+    // 整个任务到期，已有的结果也不再需要
+    private void expire() {
+        if (isStopped()) {
+            return;
+        }
+        // 先标记中止，之后结束的节点不再保存结果
+        stopped = true;
+        for (int i = 0; i < results.length; i++) {
+            OBJECTS.setVolatile(results, i, null);
+        }
+        var e = new TimeoutException("DAG deadline exceeded");
+        offTimer(() -> abort(e));
+    }
+
+    // 以异常结束任务，并取消还在执行的节点
+    private void abort(Throwable e) {
+        if (e instanceof CompletionException && null != e.getCause()) {
+            e = e.getCause();
+        }
+        if (e instanceof CancellationException) {
+            cancel(false);
+        } else {
+            stopped = true;
+            cancelFutures(false);
+            completeExceptionally(e);
+        }
+    }
+
+    // 已经结束或者正在中止，不再调度新的节点
+    private boolean isStopped() {
+        return stopped || isDone();
+    }
+
+    private void execute() {
+        try {
+            if (null != listener) {
+                onRunStarted();
+            }
+
+            var deadline = options.deadline();
+            if (null != deadline) {
+                deadlineNanos = System.nanoTime() + deadline.toNanos();
+                var timer = DAGExecutors.timer().schedule(this::expire,
+                        deadline.toNanos(), TimeUnit.NANOSECONDS);
+                whenComplete((v, e) -> timer.cancel(false));
+            }
+
+            var heads = this.heads;
+            if (null != priorities) {
+                heads = heads.clone();
+            }
+            if (remaining.get() == 0) {
+                // 增量运行没有需要重新执行的节点
+                finish();
+                return;
+            }
+            dispatchAll(heads, heads.length);
         } catch (Throwable e) {
             completeExceptionally(e);
         }
@@ -127,20 +887,230 @@ public class DAGTask<Key, Result>
         execute();
     }
 
+    private void cancelFutures(boolean mayInterruptIfRunning) {
+        for (int i = 0; i < futures.length; i++) {
+            var future = (CompletableFuture<?>) OBJECTS.getVolatile(futures, i);
+            if (null != future) {
+                future.cancel(mayInterruptIfRunning);
+            }
+        }
+    }
+
     @Override
     public boolean cancel(boolean mayInterruptIfRunning) {
-        for (CompletableFuture<?> future : futures.values()) {
-            future.cancel(mayInterruptIfRunning);
-        }
+        stopped = true;
+        cancelFutures(mayInterruptIfRunning);
         return super.cancel(mayInterruptIfRunning);
     }
 
+    /**
+     * 增量重新运行：上次运行成功结束后，只重新执行invalidated及其后代，其它节点沿用本次的结果。
+     * 返回新的任务，需要调用run()
+     *
+     * @param invalidated 输入已经变化、必须重新执行的节点，通常是头节点
+     */
+    public DAGTask<Key, Result> rerun(Collection<Key> invalidated) {
+        return rerun(invalidated, false);
+    }
+
+    /**
+     * 同{@link #rerun(Collection)}，earlyCutoff为true时，重新执行的节点结果与上次相等
+     * （Objects.equals，状态也相同）则不再向后传播，所有前驱都没有变化的后代直接沿用上次的结果
+     */
+    public DAGTask<Key, Result> rerun(Collection<Key> invalidated, boolean earlyCutoff) {
+        Objects.requireNonNull(invalidated);
+        if (!isDone() || isCompletedExceptionally()) {
+            throw new IllegalStateException("Task not completed successfully");
+        }
+        if (options.isReleaseIntermediate()) {
+            throw new IllegalStateException("Intermediate results released");
+        }
+        return new DAGTask<>(plan, handler, options, results.clone(), states.clone(),
+                invalidated, earlyCutoff);
+    }
+
+    /**
+     * 从日志恢复：日志中记录为成功的节点沿用记录的结果，其余节点及其后代重新执行。
+     * 返回新的任务，需要调用run()；options中同样设置journal时，新完成的节点继续追加到日志
+     *
+     * @param journal 上次运行时{@link DAGOptions#journal}设置的日志
+     */
+    public static <Key, Result> DAGTask<Key, Result> resume(
+            DAGPlan<Key> plan,
+            BiFunction<Key, Map<Key, Result>, CompletableFuture<Result>> handler,
+            DAGOptions<Key, Result> options,
+            DAGJournal<Key, Result> journal) throws IOException {
+        var graph = plan.graph();
+        var recovered = journal.recover();
+        var priorResults = new Object[graph.size()];
+        var priorStates = new int[graph.size()];
+        var unfinished = new ArrayList<Key>();
+        for (int index : plan.order()) {
+            var key = graph.keyAt(index);
+            var r = recovered.get(key);
+            if (null == r) {
+                unfinished.add(key);
+            } else {
+                priorResults[index] = r;
+                priorStates[index] = STATE_SUCCEEDED;
+            }
+        }
+        return new DAGTask<>(plan, handler, options, priorResults, priorStates,
+                unfinished, false);
+    }
+
     public boolean isStarted() {
         return started;
     }
 
     public Map<Key, Result> results() {
-        return immutableResults;
+        return resultMap;
+    }
+
+    public DAGNodeStatus status(Key key) {
+        int index = graph.indexOf(key);
+        if (index < 0) {
+            throw new IllegalArgumentException("Key not exists: " + key);
+        }
+        return statusAt(index);
+    }
+
+    /**
+     * @return 参与执行的节点当前状态的快照
+     */
+    public Map<Key, DAGNodeStatus> statuses() {
+        var order = plan.order();
+        var map = new HashMap<Key, DAGNodeStatus>(order.length);
+        for (int i : order) {
+            map.put(graph.keyAt(i), statusAt(i));
+        }
+        return map;
+    }
+
+    private DAGNodeStatus statusAt(int index) {
+        int state = (int) INTS.getVolatile(states, index);
+        return state == STATE_STREAMING ? DAGNodeStatus.RUNNING : DAGNodeStatus.VALUES[state];
+    }
+
+
+    //
+
+    // 只读视图，按编号访问结果数组，未产生结果的节点不出现
+    private abstract class ResultView extends AbstractMap<Key, Result> {
+        private Set<Entry<Key, Result>> entrySet;
+
+        abstract int count();
+
+        abstract int indexAt(int i);
+
+        abstract boolean contains(int index);
+
+        @Override
+        public Result get(Object key) {
+            @SuppressWarnings("unchecked")
+            int index = graph.indexOf((Key) key);
+            return index < 0 || !contains(index) ? null : resultAt(index);
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return null != get(key);
+        }
+
+        @Override
+        public Set<Entry<Key, Result>> entrySet() {
+            var es = entrySet;
+            if (null == es) {
+                entrySet = es = new EntrySet();
+            }
+            return es;
+        }
+
+        private class EntrySet extends AbstractSet<Entry<Key, Result>> {
+            @Override
+            public Iterator<Entry<Key, Result>> iterator() {
+                return new Iterator<>() {
+                    // 预读下一个非空的结果，避免并发释放时拿到null
+                    private Result value;
+                    private int cursor = advance(0);
+
+                    private int advance(int i) {
+                        int n = count();
+                        for (; i < n; i++) {
+                            value = resultAt(indexAt(i));
+                            if (null != value) break;
+                        }
+                        return i;
+                    }
+
+                    @Override
+                    public boolean hasNext() {
+                        return cursor < count();
+                    }
+
+                    @Override
+                    public Entry<Key, Result> next() {
+                        if (cursor >= count()) {
+                            throw new NoSuchElementException();
+                        }
+                        var entry = Map.entry(graph.keyAt(indexAt(cursor)), value);
+                        cursor = advance(cursor + 1);
+                        return entry;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                int size = 0;
+                for (int i = 0, n = count(); i < n; i++) {
+                    if (null != resultAt(indexAt(i))) size++;
+                }
+                return size;
+            }
+        }
+    }
+
+    // 全部节点的结果
+    private class ResultMap extends ResultView {
+        @Override
+        int count() {
+            return results.length;
+        }
+
+        @Override
+        int indexAt(int i) {
+            return i;
+        }
+
+        @Override
+        boolean contains(int index) {
+            return true;
+        }
+    }
+
+    // 某个节点的前驱结果，直接读取结果数组，不复制
+    private class DependentMap extends ResultView {
+        private final int index;
+
+        DependentMap(int index) {
+            this.index = index;
+        }
+
+        @Override
+        int count() {
+            return graph.inDegree(index);
+        }
+
+        @Override
+        int indexAt(int i) {
+            return graph.prevAt(index, i);
+        }
+
+        @Override
+        boolean contains(int prev) {
+            return graph.isPrev(index, prev);
+        }
     }
 
 }
@@ -1,7 +1,11 @@
 
 package org.cossbow.dag;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 import java.util.function.Function;
@@ -116,6 +120,181 @@ class DAGUtil {
     }
 
 
+    /**
+     * 基于CSR邻接表的拓扑排序
+     *
+     * @return 有环时长度小于size，环上及其下游的节点不在其中
+     */
+    static int[] topologicalOrder(int size, int[] nextOffsets, int[] nextTargets,
+                                  int[] prevOffsets) {
+        var inDegree = new int[size];
+        var order = new int[size];
+        int tail = 0;
+        for (int i = 0; i < size; i++) {
+            inDegree[i] = prevOffsets[i + 1] - prevOffsets[i];
+            if (inDegree[i] == 0) {
+                order[tail++] = i;
+            }
+        }
+        for (int head = 0; head < tail; head++) {
+            int id = order[head];
+            for (int j = nextOffsets[id]; j < nextOffsets[id + 1]; j++) {
+                int next = nextTargets[j];
+                if (--inDegree[next] == 0) {
+                    order[tail++] = next;
+                }
+            }
+        }
+        return tail == size ? order : Arrays.copyOf(order, tail);
+    }
+
+    private static final VarHandle INTS = MethodHandles.arrayElementVarHandle(int[].class);
+    // 每层超过这个数量时分块并行
+    static final int LEVEL_CHUNK = 1024;
+
+    /**
+     * 逐层同步的拓扑分层：当前层的所有节点并行地推进后继的入度计数，减为0的组成下一层，
+     * 每层结束是一次同步。节点所在的层就是从头节点出发的最长路径长度。调用方保证无环
+     *
+     * @return [0]为每层的起始位置，长度为层数+1；[1]为按层排列的节点编号，每层内有序
+     */
+    static int[][] topologicalLevels(int size, int[] nextOffsets, int[] nextTargets,
+                                     int[] prevOffsets, ForkJoinPool pool) {
+        var inDegree = new int[size];
+        var order = new int[size];
+        int tail = 0;
+        for (int i = 0; i < size; i++) {
+            inDegree[i] = prevOffsets[i + 1] - prevOffsets[i];
+            if (inDegree[i] == 0) {
+                order[tail++] = i;
+            }
+        }
+
+        var offsets = new int[size + 1];
+        int levels = 0;
+        var cursor = new AtomicInteger(tail);
+        for (int from = 0, to = tail; from < to; from = to, to = cursor.get()) {
+            offsets[levels++] = from;
+            if (to - from <= LEVEL_CHUNK) {
+                int end = to;
+                for (int i = from; i < to; i++) {
+                    int id = order[i];
+                    for (int j = nextOffsets[id]; j < nextOffsets[id + 1]; j++) {
+                        int next = nextTargets[j];
+                        if (--inDegree[next] == 0) {
+                            order[end++] = next;
+                        }
+                    }
+                }
+                cursor.set(end);
+            } else {
+                pool.invoke(new LevelAction(nextOffsets, nextTargets, inDegree,
+                        order, cursor, from, to));
+            }
+            // 并行时同一层内的顺序不确定
+            Arrays.sort(order, from, to);
+        }
+        offsets[levels] = size;
+        return new int[][]{Arrays.copyOf(offsets, levels + 1), order};
+    }
+
+    // 推进order[from, to)的后继，新就绪的节点成块追加到cursor之后
+    private static class LevelAction extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int[] nextOffsets, nextTargets, inDegree, order;
+        private final AtomicInteger cursor;
+        private final int from, to;
+
+        LevelAction(int[] nextOffsets, int[] nextTargets, int[] inDegree,
+                    int[] order, AtomicInteger cursor, int from, int to) {
+            this.nextOffsets = nextOffsets;
+            this.nextTargets = nextTargets;
+            this.inDegree = inDegree;
+            this.order = order;
+            this.cursor = cursor;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > LEVEL_CHUNK) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new LevelAction(nextOffsets, nextTargets, inDegree, order, cursor, from, mid),
+                        new LevelAction(nextOffsets, nextTargets, inDegree, order, cursor, mid, to));
+                return;
+            }
+            var ready = new int[64];
+            int count = 0;
+            for (int i = from; i < to; i++) {
+                int id = order[i];
+                for (int j = nextOffsets[id]; j < nextOffsets[id + 1]; j++) {
+                    int next = nextTargets[j];
+                    if ((int) INTS.getAndAdd(inDegree, next, -1) == 1) {
+                        if (count == ready.length) {
+                            flush(ready, count);
+                            count = 0;
+                        }
+                        ready[count++] = next;
+                    }
+                }
+            }
+            flush(ready, count);
+        }
+
+        private void flush(int[] ready, int count) {
+            if (count > 0) {
+                System.arraycopy(ready, 0, order, cursor.getAndAdd(count), count);
+            }
+        }
+    }
+
+    /**
+     * 按优先级从高到低排序ids[from, to)，相同优先级保持原来的顺序
+     */
+    static void sortByPriority(int[] ids, int from, int to, long[] priority) {
+        if (to - from <= 32) {
+            insertionSort(ids, from, to, priority);
+            return;
+        }
+        // 在int数组上归并，不装箱也不用比较器
+        mergeSort(Arrays.copyOfRange(ids, from, to), ids, from, to, from, priority);
+    }
+
+    private static void insertionSort(int[] ids, int from, int to, long[] priority) {
+        for (int i = from + 1; i < to; i++) {
+            int id = ids[i];
+            int j = i - 1;
+            while (j >= from && priority[ids[j]] < priority[id]) {
+                ids[j + 1] = ids[j];
+                j--;
+            }
+            ids[j + 1] = id;
+        }
+    }
+
+    // dst[lo, hi)与src[lo - off, hi - off)的内容相同，两者交替作为缓冲，排好的放在dst中
+    private static void mergeSort(int[] src, int[] dst, int lo, int hi, int off, long[] priority) {
+        if (hi - lo <= 32) {
+            insertionSort(dst, lo, hi, priority);
+            return;
+        }
+        int srcLo = lo - off, srcHi = hi - off;
+        int mid = (srcLo + srcHi) >>> 1;
+        mergeSort(dst, src, srcLo, mid, -off, priority);
+        mergeSort(dst, src, mid, srcHi, -off, priority);
+        for (int i = lo, p = srcLo, q = mid; i < hi; i++) {
+            // 相同优先级先取左边，保持稳定
+            if (q >= srcHi || (p < mid && priority[src[p]] >= priority[src[q]])) {
+                dst[i] = src[p++];
+            } else {
+                dst[i] = src[q++];
+            }
+        }
+    }
+
+
     //
 
     public static <Key> void bfs(
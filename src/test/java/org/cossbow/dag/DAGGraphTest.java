@@ -3,13 +3,22 @@ package org.cossbow.dag;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.zip.CRC32;
 
 public class DAGGraphTest {
 
@@ -87,6 +96,59 @@ public class DAGGraphTest {
         }
     }
 
+    @Test
+    public void testDuplicateKey() {
+        // 重复的Key在最后、紧跟在自己后面都要发现
+        for (var nodes : List.of(List.of(2, 1, 2), List.of(1, 2, 2), List.of(1, 1))) {
+            var e = Assertions.assertThrows(IllegalArgumentException.class,
+                    () -> new DAGGraph<>(nodes, List.of(Map.entry(1, 2))));
+            Assertions.assertEquals("Has duplicate Key", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testCycle() {
+        var nodes = List.of(1, 2, 3, 4, 5, 6);
+        var edges = List.of(
+                Map.entry(1, 2),
+                Map.entry(2, 3),
+                Map.entry(3, 4),
+                Map.entry(4, 2),
+                Map.entry(4, 5),
+                Map.entry(6, 6)
+        );
+        var e = Assertions.assertThrows(DAGCycleException.class,
+                () -> new DAGGraph<>(nodes, edges));
+        var cycle = e.cycle();
+        if (cycle.size() == 1) {
+            Assertions.assertEquals(List.of(6), cycle);
+        } else {
+            Assertions.assertEquals(Set.of(2, 3, 4), Set.copyOf(cycle));
+            for (int i = 0; i < cycle.size(); i++) {
+                var edge = Map.entry(cycle.get(i), cycle.get((i + 1) % cycle.size()));
+                Assertions.assertTrue(edges.contains(edge));
+            }
+        }
+    }
+
+    @Test
+    public void testBuilder() {
+        var builder = new DAGGraph.Builder<Integer>()
+                .addEdge(1, 2)
+                .addEdge(1, 3)
+                .addEdge(2, 4)
+                .addEdge(3, 4)
+                .addEdge(3, 4)
+                .addNode(5);
+        var r = builder.build();
+        Assertions.assertEquals(Set.of(1, 2, 3, 4, 5), r.allNodes());
+        Assertions.assertEquals(Set.of(1, 5), r.heads());
+        Assertions.assertEquals(Set.of(4, 5), r.tails());
+        Assertions.assertEquals(Set.of(2, 3), r.prev(4));
+        Assertions.assertEquals(1, r.outDegree(r.indexOf(3)));
+        Assertions.assertThrows(IllegalStateException.class, () -> builder.addNode(6));
+    }
+
     @Test
     public void testKeys() {
         var nodes = Set.of(1, 2, 3, 4, 5, 6);
@@ -130,6 +192,201 @@ public class DAGGraphTest {
         Assertions.assertTrue(r.prev(1).isEmpty());
     }
 
+    @Test
+    public void testIndex() {
+        var r = randDAG(300);
+        Assertions.assertEquals(r.allNodes().size(), r.size());
+        Assertions.assertEquals(-1, r.indexOf(-1));
+        for (int i = 0; i < r.size(); i++) {
+            var key = r.keyAt(i);
+            Assertions.assertEquals(i, r.indexOf(key));
+
+            var prev = new HashSet<Integer>();
+            for (int j = 0; j < r.inDegree(i); j++) {
+                prev.add(r.keyAt(r.prevAt(i, j)));
+            }
+            Assertions.assertEquals(r.prev(key), prev);
+
+            var next = new HashSet<Integer>();
+            for (int j = 0; j < r.outDegree(i); j++) {
+                next.add(r.keyAt(r.nextAt(i, j)));
+            }
+            Assertions.assertEquals(r.next(key), next);
+        }
+    }
+
+    @Test
+    public void testCriticalPath() {
+        var nodes = List.of(1, 2, 3, 4, 5);
+        var edges = List.of(
+                Map.entry(1, 2),
+                Map.entry(1, 3),
+                Map.entry(2, 4),
+                Map.entry(3, 4)
+        );
+        var r = new DAGGraph<>(nodes, edges);
+        var path = r.criticalPath(k -> k == 3 ? 10 : 1);
+        Assertions.assertEquals(12, path[r.indexOf(1)]);
+        Assertions.assertEquals(2, path[r.indexOf(2)]);
+        Assertions.assertEquals(11, path[r.indexOf(3)]);
+        Assertions.assertEquals(1, path[r.indexOf(4)]);
+        Assertions.assertEquals(1, path[r.indexOf(5)]);
+        Assertions.assertEquals(3, r.criticalPath()[r.indexOf(1)]);
+    }
+
+    @Test
+    public void testLevels() {
+        var nodes = List.of(1, 2, 3, 4, 5);
+        var edges = List.of(
+                Map.entry(1, 2),
+                Map.entry(1, 3),
+                Map.entry(2, 4),
+                Map.entry(3, 4),
+                Map.entry(1, 4)
+        );
+        var r = new DAGGraph<>(nodes, edges);
+        Assertions.assertEquals(3, r.levelCount());
+        var levels = r.levels();
+        Assertions.assertEquals(Set.of(1, 5), Set.copyOf(levels.get(0)));
+        Assertions.assertEquals(Set.of(2, 3), Set.copyOf(levels.get(1)));
+        Assertions.assertEquals(List.of(4), levels.get(2));
+
+        // 每层足够宽时并行计算，每个节点都在所有前驱之后
+        var width = 3000;
+        var builder = new DAGGraph.Builder<Integer>();
+        for (int i = 0; i < width * 3; i++) {
+            builder.addNode(i);
+        }
+        for (int i = 0; i < width * 2; i++) {
+            int next = (i / width + 1) * width;
+            builder.addEdge(i, next + i % width);
+            builder.addEdge(i, next + (i * 7 + 1) % width);
+        }
+        builder.addEdge(1, width * 2 + 5);
+        var big = builder.build();
+        var level = new HashMap<Integer, Integer>();
+        var bigLevels = big.levels();
+        for (int i = 0; i < bigLevels.size(); i++) {
+            for (var k : bigLevels.get(i)) level.put(k, i);
+        }
+        Assertions.assertEquals(big.size(), level.size());
+        var visited = ConcurrentHashMap.<Integer>newKeySet();
+        big.forEachInTopologicalOrder(k -> {
+            int max = -1;
+            for (var p : big.prev(k)) {
+                Assertions.assertTrue(visited.contains(p));
+                max = Math.max(max, level.get(p));
+            }
+            Assertions.assertEquals(max + 1, level.get(k));
+            visited.add(k);
+        });
+        Assertions.assertEquals(big.allNodes(), visited);
+    }
+
+    // 逐个节点沿后继遍历作为对照
+    static <Key> Set<Key> walkNext(DAGGraph<Key> graph, Key key) {
+        var result = new HashSet<Key>();
+        var stack = new ArrayList<>(graph.next(key));
+        while (!stack.isEmpty()) {
+            var k = stack.remove(stack.size() - 1);
+            if (result.add(k)) stack.addAll(graph.next(k));
+        }
+        return result;
+    }
+
+    @Test
+    public void testReachable() {
+        // 分别是位图和区间标签
+        for (var size : List.of(200, DAGReachability.BITSET_LIMIT + 100)) {
+            var builder = new DAGGraph.Builder<Integer>(size);
+            var rand = ThreadLocalRandom.current();
+            for (int i = 0; i < size; i++) {
+                builder.addNode(i);
+                for (int j = 0; j < 2 && i > 0; j++) {
+                    builder.addEdge(rand.nextInt(i), i);
+                }
+            }
+            var r = builder.build();
+            for (int t = 0; t < 50; t++) {
+                var key = rand.nextInt(size);
+                var descendants = walkNext(r, key);
+                Assertions.assertEquals(descendants, r.descendants(key));
+                for (var d : descendants) {
+                    Assertions.assertTrue(r.ancestors(d).contains(key));
+                }
+                for (int i = 0; i < size; i += 7) {
+                    Assertions.assertEquals(descendants.contains(i), r.isReachable(key, i));
+                }
+            }
+            Assertions.assertFalse(r.isReachable(0, 0));
+        }
+    }
+
+    @Test
+    public void testSortByPriority() {
+        var random = ThreadLocalRandom.current();
+        for (var size : List.of(0, 1, 20, 33, 100, 1000)) {
+            var priority = new long[size];
+            for (int i = 0; i < size; i++) {
+                priority[i] = random.nextInt(10);
+            }
+            var ids = IntStream.range(0, size).toArray();
+            var expected = IntStream.range(0, size).boxed()
+                    .sorted((a, b) -> Long.compare(priority[b], priority[a]))
+                    .mapToInt(Integer::intValue).toArray();
+            // 在数组中间排序，相同优先级保持原来的顺序
+            var padded = new int[size + 2];
+            System.arraycopy(ids, 0, padded, 1, size);
+            DAGUtil.sortByPriority(padded, 1, size + 1, priority);
+            Assertions.assertArrayEquals(expected, Arrays.copyOfRange(padded, 1, size + 1));
+        }
+    }
+
+    @Test
+    public void testSaveLoad() throws IOException {
+        var r = randDAG(500, String::valueOf);
+        var file = Files.createTempFile("dag", ".bin");
+        try {
+            r.save(file, DAGCodec.STRING);
+            for (var trusted : List.of(false, true)) {
+                var loaded = DAGGraph.load(file, DAGCodec.STRING, trusted);
+                Assertions.assertEquals(r.allNodes(), loaded.allNodes());
+                Assertions.assertEquals(r.heads(), loaded.heads());
+                Assertions.assertEquals(r.tails(), loaded.tails());
+                for (var k : r.allNodes()) {
+                    Assertions.assertEquals(r.prev(k), loaded.prev(k));
+                    Assertions.assertEquals(r.next(k), loaded.next(k));
+                }
+                Assertions.assertEquals(r.plan().topologicalOrder(), loaded.plan().topologicalOrder());
+            }
+
+            // 改动一个字节，校验和不对
+            var bytes = Files.readAllBytes(file);
+            bytes[30] ^= 1;
+            Files.write(file, bytes);
+            Assertions.assertThrows(IOException.class, () -> DAGGraph.load(file, DAGCodec.STRING));
+
+            // Key的长度不对，即使校验和与之相符也抛出IOException
+            bytes[30] ^= 1;
+            var buffer = ByteBuffer.wrap(bytes);
+            int size = buffer.getInt(8), edgeCount = buffer.getInt(12);
+            int keyTable = 5 * Integer.BYTES + Integer.BYTES * (size + 1 + edgeCount + size);
+            for (int length : List.of(-1, bytes.length, 0)) {
+                buffer.putInt(keyTable, length);
+                var crc = new CRC32();
+                crc.update(bytes, 0, bytes.length - Long.BYTES);
+                buffer.putLong(bytes.length - Long.BYTES, crc.getValue());
+                Files.write(file, bytes);
+                for (var trusted : List.of(false, true)) {
+                    Assertions.assertThrows(IOException.class,
+                            () -> DAGGraph.load(file, DAGCodec.STRING, trusted));
+                }
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
     @Test
     public void testBFS() {
         var nodes = Set.of(1, 2, 3, 4, 5, 6);
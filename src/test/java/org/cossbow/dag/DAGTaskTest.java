@@ -4,10 +4,21 @@ import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BiFunction;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import static org.cossbow.dag.DAGTaskTest.TestNode.*;
 
@@ -69,6 +80,810 @@ public class DAGTaskTest {
         System.out.println(sum);
     }
 
+    @Test
+    public void testExecOnce() {
+        var graph = DAGGraphTest.randDAG(200);
+        var counts = new ConcurrentHashMap<Integer, AtomicInteger>();
+        var task = new DAGTask<Integer, Integer>(graph, (k, results) -> {
+            counts.computeIfAbsent(k, i -> new AtomicInteger()).incrementAndGet();
+            Assertions.assertEquals(graph.prev(k), results.keySet());
+            return CompletableFuture.supplyAsync(() -> k, EXECUTOR);
+        });
+        EXECUTOR.execute(task);
+        var re = task.join();
+        Assertions.assertEquals(graph.allNodes(), re.keySet());
+        Assertions.assertSame(task.results(), re);
+        for (var k : graph.allNodes()) {
+            Assertions.assertEquals(k, re.get(k));
+        }
+        for (var count : counts.values()) {
+            Assertions.assertEquals(1, count.get());
+        }
+    }
+
+    @Test
+    public void testExecutor() {
+        var dispatched = new AtomicInteger();
+        var options = new DAGOptions<TestNode, Integer>()
+                .executor(r -> {
+                    dispatched.incrementAndGet();
+                    EXECUTOR.execute(r);
+                })
+                .inline(k -> k == N4 || k == N6);
+        var task = new DAGTask<TestNode, Integer>(graph, (k, results) ->
+                CompletableFuture.completedFuture(results.size()), options);
+        task.run();
+        task.join();
+        Assertions.assertEquals(4, dispatched.get());
+    }
+
+    @Test
+    public void testBlocking() {
+        var width = 500;
+        var nodes = IntStream.rangeClosed(0, width).boxed().collect(Collectors.toList());
+        var edges = IntStream.rangeClosed(1, width)
+                .mapToObj(i -> Map.entry(0, i)).collect(Collectors.toList());
+        var graph = new DAGGraph<>(nodes, edges);
+        var ids = new AtomicInteger();
+        var handler = DAGNodeHandler.<Integer, Integer, Integer>blocking(
+                ids::incrementAndGet,
+                (id, k, results) -> DAGResult.success(k),
+                (id, k, data) -> {
+                    try {
+                        Thread.sleep(200);
+                    } catch (InterruptedException e) {
+                        throw new CompletionException(e);
+                    }
+                    return DAGResult.success(data);
+                });
+        var start = System.nanoTime();
+        var task = new DAGTask<>(graph, handler);
+        task.run();
+        var re = task.join();
+        var elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        System.out.println("virtual: " + DAGExecutors.supportsVirtualThreads() +
+                ", elapsed: " + elapsed);
+        Assertions.assertEquals(width + 1, re.size());
+        Assertions.assertTrue(elapsed < 5000);
+    }
+
+    @Test
+    public void testLimiter() {
+        var width = 50;
+        var nodes = IntStream.rangeClosed(0, width).boxed().collect(Collectors.toList());
+        var edges = IntStream.rangeClosed(1, width)
+                .mapToObj(i -> Map.entry(0, i)).collect(Collectors.toList());
+        var graph = new DAGGraph<>(nodes, edges);
+        var global = new DAGLimiter(4);
+        var odd = new DAGLimiter(1);
+        var running = new AtomicInteger();
+        var runningOdd = new AtomicInteger();
+        var maxRunning = new AtomicInteger();
+        var maxRunningOdd = new AtomicInteger();
+        var executor = CompletableFuture.delayedExecutor(
+                10, TimeUnit.MILLISECONDS, EXECUTOR);
+        var options = new DAGOptions<Integer, Integer>()
+                .globalLimiter(global)
+                .nodeLimiter(k -> k % 2 == 1 ? odd : null);
+        var task = new DAGTask<Integer, Integer>(graph, (k, results) -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            if (k % 2 == 1) {
+                maxRunningOdd.accumulateAndGet(runningOdd.incrementAndGet(), Math::max);
+            }
+            return CompletableFuture.supplyAsync(() -> {
+                running.decrementAndGet();
+                if (k % 2 == 1) runningOdd.decrementAndGet();
+                return k;
+            }, executor);
+        }, options);
+        task.run();
+        Assertions.assertEquals(width + 1, task.join().size());
+        Assertions.assertEquals(4, maxRunning.get());
+        Assertions.assertEquals(1, maxRunningOdd.get());
+        Assertions.assertEquals(4, global.available());
+        Assertions.assertEquals(1, odd.available());
+        // 多归还的许可说明调度有错，立即报告
+        Assertions.assertThrows(IllegalStateException.class, odd::release);
+        Assertions.assertEquals(1, odd.available());
+    }
+
+    @Test
+    public void testPrioritized() {
+        var nodes = List.of(10, 11, 12, 13, 0, 1, 2, 3);
+        var edges = List.of(Map.entry(0, 1), Map.entry(1, 2), Map.entry(2, 3));
+        var graph = new DAGGraph<>(nodes, edges);
+        var order = new ConcurrentLinkedQueue<Integer>();
+        var options = new DAGOptions<Integer, Integer>()
+                .executor(EXECUTOR)
+                .globalLimiter(new DAGLimiter(1))
+                .prioritized();
+        var task = new DAGTask<Integer, Integer>(graph, (k, results) -> {
+            order.add(k);
+            return CompletableFuture.supplyAsync(() -> k, EXECUTOR);
+        }, options);
+        task.run();
+        task.join();
+        // 3与10~13的剩余路径长度相同，顺序不确定
+        Assertions.assertEquals(List.of(0, 1, 2), List.copyOf(order).subList(0, 3));
+    }
+
+    @Test
+    public void testPlan() {
+        var plan = DAGPlan.of(graph);
+        Assertions.assertSame(plan, graph.plan());
+
+        var order = plan.topologicalOrder();
+        Assertions.assertEquals(graph.allNodes().size(), order.size());
+        for (var k : order) {
+            for (var p : graph.prev(k)) {
+                Assertions.assertTrue(order.indexOf(p) < order.indexOf(k));
+            }
+        }
+
+        for (int i = 0; i < 3; i++) {
+            var task = plan.<Integer>newTask((k, results) ->
+                    CompletableFuture.completedFuture(
+                            results.isEmpty() ? 1 : sumDAGResults(results.values())));
+            task.run();
+            Assertions.assertEquals(2, task.join().get(N6));
+        }
+    }
+
+    @Test
+    public void testPartialPlan() {
+        var plan = graph.plan(List.of(N5));
+        Assertions.assertSame(plan, graph.plan(Set.of(N5)));
+        Assertions.assertEquals(List.of(N1, N3, N5), plan.topologicalOrder());
+
+        var invoked = ConcurrentHashMap.<TestNode>newKeySet();
+        var task = plan.<Integer>newTask((k, results) -> {
+            invoked.add(k);
+            return CompletableFuture.supplyAsync(() ->
+                    results.isEmpty() ? 1 : sumDAGResults(results.values()), EXECUTOR);
+        });
+        task.run();
+        Assertions.assertEquals(Map.of(N1, 1, N3, 1, N5, 1), task.join());
+        Assertions.assertEquals(Set.of(N1, N3, N5), invoked);
+        Assertions.assertEquals(Set.of(N1, N3, N5), task.statuses().keySet());
+
+        // 目标之间有依赖时，释放中间结果也保留所有目标
+        var task2 = new DAGTask<>(graph.plan(List.of(N3, N5)),
+                (k, results) -> CompletableFuture.completedFuture(1),
+                new DAGOptions<TestNode, Integer>().releaseIntermediate());
+        task2.run();
+        Assertions.assertEquals(Set.of(N3, N5), task2.join().keySet());
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> graph.plan(List.of()));
+    }
+
+    @Test
+    public void testLongChain() {
+        var size = 100_000;
+        var nodes = IntStream.range(0, size).boxed().collect(Collectors.toList());
+        var edges = IntStream.range(1, size)
+                .mapToObj(i -> Map.entry(i - 1, i)).collect(Collectors.toList());
+        var task = new DAGTask<Integer, Integer>(new DAGGraph<>(nodes, edges),
+                (k, results) -> CompletableFuture.completedFuture(k));
+        task.run();
+        Assertions.assertEquals(size, task.join().size());
+    }
+
+    // N2失败，N3较慢
+    private Set<TestNode> runWithFailure(DAGFailurePolicy policy) {
+        var invoked = ConcurrentHashMap.<TestNode>newKeySet();
+        final var fast = CompletableFuture.delayedExecutor(
+                50, TimeUnit.MILLISECONDS, EXECUTOR);
+        final var slow = CompletableFuture.delayedExecutor(
+                300, TimeUnit.MILLISECONDS, EXECUTOR);
+        var options = new DAGOptions<TestNode, Integer>().failurePolicy(policy);
+        var task = new DAGTask<TestNode, Integer>(graph, (k, results) -> {
+            invoked.add(k);
+            if (N2 == k) {
+                return CompletableFuture.supplyAsync(() -> {
+                    throw new IllegalStateException("N2");
+                }, fast);
+            }
+            if (N4 == k) {
+                Assertions.assertEquals(Set.of(N3), results.keySet());
+            }
+            return CompletableFuture.supplyAsync(() -> 1, N3 == k ? slow : EXECUTOR);
+        }, options);
+        task.run();
+        try {
+            task.join();
+            Assertions.fail("Task should fail.");
+        } catch (CompletionException e) {
+            Assertions.assertEquals("N2", e.getCause().getMessage());
+        }
+        return invoked;
+    }
+
+    @Test
+    public void testFailurePolicy() {
+        Assertions.assertEquals(Set.of(N1, N2, N3, N5, N6),
+                runWithFailure(DAGFailurePolicy.SKIP_DESCENDANTS));
+        Assertions.assertEquals(Set.of(values()),
+                runWithFailure(DAGFailurePolicy.CONTINUE_ALL));
+        var start = System.nanoTime();
+        Assertions.assertEquals(Set.of(N1, N2, N3),
+                runWithFailure(DAGFailurePolicy.FAIL_FAST));
+        Assertions.assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(250));
+    }
+
+    @Test
+    public void testFailedResult() {
+        var invoked = ConcurrentHashMap.<TestNode>newKeySet();
+        var ids = new AtomicInteger();
+        var handler = new DAGNodeHandler<Integer, TestNode, Integer>(
+                ids::incrementAndGet,
+                (id, k, results) -> N3 == k ? DAGResult.error("N3") : DAGResult.success(1),
+                (id, k, data) -> {
+                    invoked.add(k);
+                    return CompletableFuture.completedFuture(DAGResult.success(data));
+                });
+        var task = new DAGTask<>(graph, handler);
+        task.run();
+        var re = task.join();
+        Assertions.assertEquals(Set.of(N1, N2), invoked);
+        Assertions.assertFalse(re.get(N3).isSuccess());
+        Assertions.assertEquals("N3", re.get(N3).getError());
+
+        var statuses = task.statuses();
+        Assertions.assertEquals(DAGNodeStatus.SUCCEEDED, statuses.get(N1));
+        Assertions.assertEquals(DAGNodeStatus.SUCCEEDED, statuses.get(N2));
+        Assertions.assertEquals(DAGNodeStatus.FAILED, statuses.get(N3));
+        Assertions.assertEquals(DAGNodeStatus.SKIPPED, statuses.get(N4));
+        Assertions.assertEquals(DAGNodeStatus.SKIPPED, statuses.get(N5));
+        Assertions.assertEquals(DAGNodeStatus.SKIPPED, task.status(N6));
+    }
+
+    @Test
+    public void testTimeout() {
+        BiFunction<TestNode, Map<TestNode, Integer>, CompletableFuture<Integer>> handler =
+                (k, results) -> {
+                    var context = DAGContext.current();
+                    Assertions.assertEquals(k, context.key());
+                    Assertions.assertTrue(context.remaining(TimeUnit.MILLISECONDS) <= 100);
+                    if (N3 == k) return new CompletableFuture<>();
+                    return CompletableFuture.completedFuture(1);
+                };
+
+        var options = new DAGOptions<TestNode, Integer>()
+                .nodeTimeout(Duration.ofMillis(100));
+        var task = new DAGTask<>(graph, handler, options);
+        task.run();
+        try {
+            task.join();
+            Assertions.fail("Task should time out.");
+        } catch (CompletionException e) {
+            Assertions.assertTrue(e.getCause() instanceof TimeoutException);
+        }
+        Assertions.assertEquals(DAGNodeStatus.FAILED, task.status(N3));
+
+        task = new DAGTask<>(graph, handler, options.skipOnTimeout(true));
+        task.run();
+        Assertions.assertEquals(Set.of(N1, N2), task.join().keySet());
+        Assertions.assertEquals(DAGNodeStatus.SKIPPED, task.status(N3));
+        Assertions.assertEquals(DAGNodeStatus.SKIPPED, task.status(N6));
+
+        // 超时之后转交的许可和就绪的后继都不在定时器线程上执行
+        var threads = ConcurrentHashMap.<String>newKeySet();
+        task = new DAGTask<>(graph, (k, results) -> {
+            threads.add(Thread.currentThread().getName());
+            return handler.apply(k, results);
+        }, new DAGOptions<TestNode, Integer>()
+                .nodeTimeout(Duration.ofMillis(100))
+                .failurePolicy(DAGFailurePolicy.CONTINUE_ALL)
+                .globalLimiter(new DAGLimiter(1))
+                .inline(k -> true));
+        task.run();
+        Assertions.assertThrows(CompletionException.class, task::join);
+        Assertions.assertEquals(DAGNodeStatus.SUCCEEDED, task.status(N6));
+        Assertions.assertTrue(threads.stream().noneMatch(t -> t.startsWith("dag-timer-")),
+                threads::toString);
+    }
+
+    @Test
+    public void testDeadline() {
+        var options = new DAGOptions<TestNode, Integer>()
+                .deadline(Duration.ofMillis(200));
+        var task = new DAGTask<TestNode, Integer>(graph, (k, results) -> {
+            Assertions.assertTrue(DAGContext.current().hasDeadline());
+            if (N5 == k) return new CompletableFuture<>();
+            return CompletableFuture.completedFuture(1);
+        }, options);
+        // 到期的任务也不在定时器线程上结束
+        var completedOn = new AtomicReference<String>();
+        task.whenComplete((v, e) -> completedOn.set(Thread.currentThread().getName()));
+        task.run();
+        try {
+            task.join();
+            Assertions.fail("Task should time out.");
+        } catch (CompletionException e) {
+            Assertions.assertTrue(e.getCause() instanceof TimeoutException);
+        }
+        Assertions.assertTrue(task.results().isEmpty());
+        Assertions.assertEquals(DAGNodeStatus.CANCELLED, task.status(N5));
+        Assertions.assertFalse(completedOn.get().startsWith("dag-timer-"), completedOn.get());
+    }
+
+    private DAGTask<TestNode, DAGResult<Integer>> runWithRetry(
+            DAGRetryPolicy policy, Collection<Integer> n3Ids) {
+        var ids = new AtomicInteger();
+        var handler = new DAGNodeHandler<Integer, TestNode, Integer>(
+                ids::incrementAndGet,
+                (id, k, results) -> DAGResult.success(1),
+                (id, k, data) -> {
+                    if (N3 == k) {
+                        // 重试不在定时器线程上执行
+                        Assertions.assertFalse(Thread.currentThread().getName().startsWith("dag-timer-"));
+                        n3Ids.add(id);
+                        if (n3Ids.size() < 3) {
+                            return CompletableFuture.failedFuture(new IllegalStateException("retry"));
+                        }
+                    }
+                    return CompletableFuture.completedFuture(DAGResult.success(data));
+                }).withRetry(policy);
+        var task = new DAGTask<>(graph, handler);
+        task.run();
+        return task;
+    }
+
+    @Test
+    public void testRetry() {
+        var policy = new DAGRetryPolicy()
+                .maxAttempts(3)
+                .backoff(Duration.ofMillis(10), 2, Duration.ofMillis(100));
+
+        var n3Ids = new ConcurrentLinkedQueue<Integer>();
+        var task = runWithRetry(policy, n3Ids);
+        Assertions.assertEquals(6, task.join().size());
+        Assertions.assertEquals(3, n3Ids.size());
+        Assertions.assertEquals(1, Set.copyOf(n3Ids).size());
+
+        n3Ids.clear();
+        task = runWithRetry(policy.regenerateId(true), n3Ids);
+        Assertions.assertEquals(6, task.join().size());
+        Assertions.assertEquals(3, Set.copyOf(n3Ids).size());
+
+        n3Ids.clear();
+        task = runWithRetry(policy.retryable(e -> !(e instanceof IllegalStateException)), n3Ids);
+        Assertions.assertThrows(CompletionException.class, task::join);
+        Assertions.assertEquals(1, n3Ids.size());
+    }
+
+    @Test
+    public void testMetrics() {
+        var subtaskIds = new ConcurrentHashMap<TestNode, Object>();
+        var metrics = new DAGMetrics<TestNode>() {
+            @Override
+            public void nodeCompleted(TestNode key, Object subtaskId, long nanoTime, long execNanos) {
+                subtaskIds.put(key, subtaskId);
+                super.nodeCompleted(key, subtaskId, nanoTime, execNanos);
+            }
+        };
+        var ids = new AtomicInteger();
+        var handler = new DAGNodeHandler<Integer, TestNode, Integer>(
+                ids::incrementAndGet,
+                (id, k, results) -> N5 == k ? DAGResult.error("N5") : DAGResult.success(1),
+                (id, k, data) -> CompletableFuture.supplyAsync(
+                        () -> DAGResult.success(data), EXECUTOR));
+        var options = new DAGOptions<TestNode, DAGResult<Integer>>()
+                .listener(metrics);
+        for (int i = 0; i < 3; i++) {
+            var task = new DAGTask<>(graph, handler, options);
+            task.run();
+            task.join();
+        }
+
+        Assertions.assertEquals(3, metrics.runs().count());
+        Assertions.assertEquals(0, metrics.runningTasks());
+        Assertions.assertEquals(0, metrics.runningNodes());
+        Assertions.assertEquals(3, metrics.node(N1).exec().count());
+        Assertions.assertTrue(metrics.node(N1).exec().percentileNanos(0.99) > 0);
+        Assertions.assertEquals(3, metrics.node(N5).failed());
+        Assertions.assertEquals(3, metrics.node(N6).skipped());
+        Assertions.assertEquals(0, metrics.node(N6).exec().count());
+        Assertions.assertEquals(Set.of(N1, N2, N3, N4), subtaskIds.keySet());
+        Assertions.assertNotNull(subtaskIds.get(N1));
+
+        // 开始后超时跳过、提交被拒绝，在途数量都要归零
+        var timeoutMetrics = new DAGMetrics<TestNode>();
+        var task = new DAGTask<TestNode, Integer>(graph, (k, results) -> N3 == k ?
+                new CompletableFuture<>() : CompletableFuture.completedFuture(1),
+                new DAGOptions<TestNode, Integer>()
+                        .nodeTimeout(Duration.ofMillis(50))
+                        .skipOnTimeout(true)
+                        .listener(timeoutMetrics));
+        task.run();
+        task.join();
+        Assertions.assertEquals(0, timeoutMetrics.runningNodes());
+        Assertions.assertEquals(0, timeoutMetrics.node(N3).inFlight());
+        Assertions.assertEquals(1, timeoutMetrics.node(N3).cancelled());
+        Assertions.assertEquals(1, timeoutMetrics.node(N3).skipped());
+
+        var rejectMetrics = new DAGMetrics<TestNode>();
+        task = new DAGTask<>(graph, (k, results) -> CompletableFuture.completedFuture(1),
+                new DAGOptions<TestNode, Integer>()
+                        .executor(r -> {
+                            throw new RejectedExecutionException();
+                        })
+                        .listener(rejectMetrics));
+        task.run();
+        Assertions.assertThrows(CompletionException.class, task::join);
+        Assertions.assertEquals(0, rejectMetrics.runningNodes());
+        Assertions.assertEquals(1, rejectMetrics.node(N1).failed());
+    }
+
+    @Test
+    public void testReleaseIntermediate() {
+        var size = 1000;
+        var nodes = IntStream.range(0, size).boxed().collect(Collectors.toList());
+        var edges = IntStream.range(1, size)
+                .mapToObj(i -> Map.entry(i - 1, i)).collect(Collectors.toList());
+        var chain = new DAGGraph<>(nodes, edges);
+        var holder = new AtomicReference<DAGTask<Integer, Integer>>();
+        var maxRetained = new AtomicInteger();
+        var options = new DAGOptions<Integer, Integer>()
+                .releaseIntermediate(List.of(10));
+        var task = new DAGTask<Integer, Integer>(chain, (k, results) -> {
+            maxRetained.accumulateAndGet(holder.get().results().size(), Math::max);
+            return CompletableFuture.completedFuture(k);
+        }, options);
+        holder.set(task);
+        task.run();
+        Assertions.assertEquals(Map.of(10, 10, size - 1, size - 1), task.join());
+        Assertions.assertTrue(maxRetained.get() <= 2);
+
+        var task2 = new DAGTask<>(graph, (k, results) -> {
+            if (N4 == k) Assertions.assertEquals(Set.of(N2, N3), results.keySet());
+            return CompletableFuture.supplyAsync(() -> 1, EXECUTOR);
+        }, new DAGOptions<TestNode, Integer>().releaseIntermediate());
+        task2.run();
+        Assertions.assertEquals(Set.of(N4, N6), task2.join().keySet());
+    }
+
+    @Test
+    public void testRerun() {
+        var source = new AtomicInteger(1);
+        var invoked = ConcurrentHashMap.<TestNode>newKeySet();
+        var task = new DAGTask<TestNode, Integer>(graph, (k, results) -> {
+            invoked.add(k);
+            return CompletableFuture.supplyAsync(() -> N1 == k ? source.get() :
+                    sumDAGResults(results.values()), EXECUTOR);
+        });
+        task.run();
+        Assertions.assertEquals(2, task.join().get(N6));
+
+        // 只执行N3的后代
+        invoked.clear();
+        var task2 = task.rerun(List.of(N3));
+        task2.run();
+        Assertions.assertEquals(task.join(), task2.join());
+        Assertions.assertEquals(Set.of(N3, N4, N5, N6), invoked);
+
+        // 结果没有变化，提前截止
+        invoked.clear();
+        var task3 = task2.rerun(List.of(N1), true);
+        task3.run();
+        Assertions.assertEquals(task.join(), task3.join());
+        Assertions.assertEquals(Set.of(N1), invoked);
+        Assertions.assertEquals(DAGNodeStatus.SUCCEEDED, task3.status(N6));
+
+        invoked.clear();
+        source.set(2);
+        var task4 = task3.rerun(List.of(N1), true);
+        task4.run();
+        Assertions.assertEquals(4, task4.join().get(N6));
+        Assertions.assertEquals(Set.of(values()), invoked);
+
+        var task5 = task4.rerun(List.of());
+        task5.run();
+        Assertions.assertEquals(task4.join(), task5.join());
+
+        Assertions.assertThrows(IllegalStateException.class, () -> new DAGTask<>(graph,
+                (k, results) -> CompletableFuture.completedFuture(1)).rerun(List.of(N1)));
+    }
+
+    // 把上游的数据块乘以10写入下游，每次只请求一个
+    static void pipe(DAGStream<Integer> upstream, DAGStream<Integer> downstream) {
+        upstream.subscribe(new Flow.Subscriber<>() {
+            private Flow.Subscription subscription;
+
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                this.subscription = subscription;
+                subscription.request(1);
+            }
+
+            @Override
+            public void onNext(Integer item) {
+                downstream.emit(item * 10);
+                subscription.request(1);
+            }
+
+            @Override
+            public void onError(Throwable e) {
+                downstream.fail(e);
+            }
+
+            @Override
+            public void onComplete() {
+                downstream.complete();
+            }
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testStreaming() {
+        var graph = new DAGGraph<>(List.of("A", "B", "C"),
+                List.of(Map.entry("A", "B"), Map.entry("B", "C")));
+        var holder = new AtomicReference<DAGTask<String, Object>>();
+        var upstreamRunning = new AtomicReference<DAGNodeStatus>();
+        var head = new AtomicReference<DAGStream<Integer>>();
+        var options = new DAGOptions<String, Object>()
+                .nodeTimeout(Duration.ofHours(1))
+                .streaming(k -> !"C".equals(k), r -> r instanceof DAGStream ? (DAGStream<?>) r : null);
+        var task = new DAGTask<String, Object>(graph, (k, results) -> {
+            var stream = new DAGStream<Integer>();
+            switch (k) {
+                case "A":
+                    head.set(stream);
+                    CompletableFuture.runAsync(() -> {
+                        for (int i = 1; i <= 5; i++) {
+                            stream.emit(i);
+                            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(20));
+                        }
+                        stream.complete();
+                    }, EXECUTOR);
+                    // 稍后才发布，超时的定时器已经启动
+                    return CompletableFuture.supplyAsync(() -> stream,
+                            CompletableFuture.delayedExecutor(10, TimeUnit.MILLISECONDS, EXECUTOR));
+                case "B":
+                    upstreamRunning.set(holder.get().status("A"));
+                    pipe((DAGStream<Integer>) results.get("A"), stream);
+                    return CompletableFuture.completedFuture(stream);
+                default:
+                    var upstream = (DAGStream<Integer>) results.get("B");
+                    Assertions.assertTrue(upstream.completion().isDone());
+                    return CompletableFuture.completedFuture(
+                            sumDAGResults(upstream.completion().join()));
+            }
+        }, options);
+        holder.set(task);
+        task.run();
+        Assertions.assertEquals(150, task.join().get("C"));
+        Assertions.assertEquals(DAGNodeStatus.RUNNING, upstreamRunning.get());
+        Assertions.assertEquals(DAGNodeStatus.SUCCEEDED, task.status("B"));
+        // A只有流式后继，B收到的数据块不再缓存；B有普通后继，保留完整的列表
+        Assertions.assertEquals(5, head.get().size());
+        Assertions.assertEquals(0, head.get().buffered());
+        Assertions.assertNull(head.get().completion().join());
+        Assertions.assertEquals(5, ((DAGStream<?>) task.join().get("B")).completion().join().size());
+        // 流式节点结束后超时的定时器已经取消
+        var timer = (ScheduledThreadPoolExecutor) DAGExecutors.timer();
+        Assertions.assertTrue(timer.getQueue().stream().noneMatch(t ->
+                ((Delayed) t).getDelay(TimeUnit.MINUTES) > 30));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testStreamingSuccessors() {
+        // B晚一些才订阅，C不订阅直接结束；A的DAGStream上另有两个与后继无关的订阅
+        var graph = new DAGGraph<>(List.of("A", "B", "C"),
+                List.of(Map.entry("A", "B"), Map.entry("A", "C")));
+        var head = new AtomicReference<DAGStream<Integer>>();
+        var options = new DAGOptions<String, Object>()
+                .streaming(k -> true, r -> r instanceof DAGStream ? (DAGStream<?>) r : null);
+        var task = new DAGTask<String, Object>(graph, (k, results) -> {
+            var stream = new DAGStream<Integer>();
+            switch (k) {
+                case "A":
+                    head.set(stream);
+                    CompletableFuture.runAsync(() -> {
+                        for (int j = 0; j < 2; j++) {
+                            pipe(stream, new DAGStream<>());
+                        }
+                        for (int i = 1; i <= 5; i++) {
+                            stream.emit(i);
+                            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(20));
+                        }
+                        stream.complete();
+                    }, EXECUTOR);
+                    return CompletableFuture.completedFuture(stream);
+                case "B":
+                    LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(50));
+                    pipe((DAGStream<Integer>) results.get("A"), stream);
+                    return CompletableFuture.completedFuture(stream);
+                default:
+                    return CompletableFuture.completedFuture(0);
+            }
+        }, options);
+        task.run();
+        var b = (DAGStream<?>) task.join().get("B");
+        Assertions.assertEquals(5, b.completion().join().size());
+        Assertions.assertEquals(0, head.get().buffered());
+    }
+
+    @Test
+    public void testStreamComplete() {
+        // 与complete并发的emit要么被拒绝，要么出现在完整的列表中
+        for (int round = 0; round < 100; round++) {
+            var stream = new DAGStream<Integer>();
+            var emitted = CompletableFuture.supplyAsync(() -> {
+                int count = 0;
+                while (stream.emit(count)) {
+                    count++;
+                }
+                return count;
+            }, EXECUTOR);
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(100));
+            Assertions.assertTrue(stream.complete());
+            Assertions.assertFalse(stream.emit(-1));
+            Assertions.assertFalse(stream.fail(new IllegalStateException()));
+            Assertions.assertEquals(emitted.join(), stream.completion().join().size());
+        }
+    }
+
+    @Test
+    public void testJournal() throws Exception {
+        var file = Files.createTempFile("dag", ".journal");
+        try {
+            // N3失败，N3之前的节点记录到日志
+            var codec = DAGCodec.of((TestNode k) -> DAGCodec.STRING.encode(k.name()),
+                    b -> TestNode.valueOf(DAGCodec.STRING.decode(b)));
+            var journal1 = new DAGFileJournal<>(file, codec, DAGCodec.INTEGER);
+            var task = new DAGTask<TestNode, Integer>(graph, (k, results) -> N3 == k ?
+                    CompletableFuture.failedFuture(new IllegalStateException()) :
+                    CompletableFuture.completedFuture(1),
+                    new DAGOptions<TestNode, Integer>().journal(journal1));
+            task.run();
+            Assertions.assertThrows(CompletionException.class, task::join);
+            journal1.flush().join();
+            journal1.close();
+
+            // 恢复后只执行未完成的节点
+            var invoked = ConcurrentHashMap.<TestNode>newKeySet();
+            var journal2 = new DAGFileJournal<>(file, codec, DAGCodec.INTEGER);
+            Assertions.assertEquals(Map.of(N1, 1, N2, 1), journal2.recover());
+            var resumed = DAGTask.<TestNode, Integer>resume(graph.plan(), (k, results) -> {
+                invoked.add(k);
+                return CompletableFuture.completedFuture(
+                        results.isEmpty() ? 1 : sumDAGResults(results.values()));
+            }, new DAGOptions<TestNode, Integer>().journal(journal2), journal2);
+            resumed.run();
+            Assertions.assertEquals(2, resumed.join().get(N6));
+            Assertions.assertEquals(Set.of(N3, N4, N5, N6), invoked);
+            journal2.close();
+
+            // 不完整的尾部被截掉
+            Files.write(file, new byte[]{0, 0, 0, 100, 1}, StandardOpenOption.APPEND);
+            var journal3 = new DAGFileJournal<>(file, codec, DAGCodec.INTEGER);
+            Assertions.assertEquals(values().length, journal3.recover().size());
+            journal3.close();
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testJournalDamage() throws Exception {
+        var file = Files.createTempFile("dag", ".journal");
+        try {
+            // 编码失败的记录只跳过那一条，报告给之后的第一个flush
+            var codec = DAGCodec.of((TestNode k) -> DAGCodec.STRING.encode(k.name()),
+                    b -> TestNode.valueOf(DAGCodec.STRING.decode(b)));
+            var resultCodec = DAGCodec.of((Integer r) -> {
+                if (r < 0) throw new IllegalArgumentException("negative");
+                return DAGCodec.INTEGER.encode(r);
+            }, DAGCodec.INTEGER::decode);
+            var journal1 = new DAGFileJournal<>(file, codec, resultCodec);
+            journal1.completed(N1, 1);
+            journal1.completed(N2, -1);
+            journal1.completed(N3, 3);
+            var e = Assertions.assertThrows(CompletionException.class, () -> journal1.flush().join());
+            Assertions.assertTrue(e.getCause() instanceof IOException);
+            journal1.completed(N4, 4);
+            journal1.flush().join();
+            Assertions.assertNotNull(journal1.error());
+            journal1.close();
+
+            var journal2 = new DAGFileJournal<>(file, codec, resultCodec);
+            Assertions.assertEquals(Map.of(N1, 1, N3, 3, N4, 4), journal2.recover());
+            journal2.close();
+
+            // 中间的记录损坏：跳过它继续恢复之后的记录，只截掉真正不完整的尾部
+            var bytes = Files.readAllBytes(file);
+            bytes[10] = bytes[11] = -1;
+            Files.write(file, bytes);
+            Files.write(file, new byte[]{0, 0, 0, 100, 1}, StandardOpenOption.APPEND);
+            var journal3 = new DAGFileJournal<>(file, codec, resultCodec);
+            Assertions.assertEquals(bytes.length, Files.size(file));
+            Assertions.assertEquals(Map.of(N3, 3, N4, 4), journal3.recover());
+            journal3.completed(N5, 5);
+            journal3.close();
+
+            var journal4 = new DAGFileJournal<>(file, codec, resultCodec);
+            Assertions.assertEquals(Map.of(N3, 3, N4, 4, N5, 5), journal4.recover());
+            journal4.close();
+
+            // 解码失败的记录同样跳过，报告在error()中
+            var strict = DAGCodec.of(DAGCodec.INTEGER::encode, (byte[] b) -> {
+                var r = DAGCodec.INTEGER.decode(b);
+                if (r == 4) throw new IllegalArgumentException("unknown");
+                return r;
+            });
+            var journal5 = new DAGFileJournal<>(file, codec, strict);
+            Assertions.assertEquals(Map.of(N3, 3, N5, 5), journal5.recover());
+            Assertions.assertNotNull(journal5.error());
+            journal5.close();
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testCache() throws InterruptedException {
+        var invoked = new AtomicInteger();
+        var cache = new DAGResultCache<TestNode, Integer>(100);
+        var options = new DAGOptions<TestNode, Integer>()
+                .executor(EXECUTOR)
+                .cache(cache, (k, results) -> Map.copyOf(results));
+        BiFunction<TestNode, Map<TestNode, Integer>, CompletableFuture<Integer>> handler =
+                (k, results) -> {
+                    invoked.incrementAndGet();
+                    return CompletableFuture.supplyAsync(() ->
+                                    results.isEmpty() ? 1 : sumDAGResults(results.values()),
+                            CompletableFuture.delayedExecutor(50, TimeUnit.MILLISECONDS, EXECUTOR));
+                };
+
+        // 同时运行的两个任务，每个节点只计算一次
+        var task1 = new DAGTask<>(graph, handler, options);
+        var task2 = new DAGTask<>(graph, handler, options);
+        task1.run();
+        task2.run();
+        Assertions.assertEquals(task1.join(), task2.join());
+        Assertions.assertEquals(values().length, invoked.get());
+
+        // 全部命中，不再调用handler
+        var task3 = new DAGTask<>(graph, handler, options);
+        task3.run();
+        Assertions.assertEquals(task1.join(), task3.join());
+        Assertions.assertEquals(values().length, invoked.get());
+        Assertions.assertEquals(DAGNodeStatus.SUCCEEDED, task3.status(N6));
+
+        // 超出权重上限时淘汰最久没有使用的
+        var small = new DAGResultCache<TestNode, Integer>(2);
+        var task4 = new DAGTask<>(graph, handler, new DAGOptions<TestNode, Integer>()
+                .cache(small, (k, results) -> Map.copyOf(results)));
+        task4.run();
+        task4.join();
+        Assertions.assertEquals(2, small.size());
+        Assertions.assertEquals(2, small.weight());
+
+        // 发起计算的运行超时，等待同一个计算的运行不受影响
+        var shared = new DAGResultCache<TestNode, Integer>(100);
+        var started = new CountDownLatch(1);
+        BiFunction<TestNode, Map<TestNode, Integer>, CompletableFuture<Integer>> slow =
+                (k, results) -> {
+                    started.countDown();
+                    return CompletableFuture.supplyAsync(() ->
+                                    results.isEmpty() ? 1 : sumDAGResults(results.values()),
+                            CompletableFuture.delayedExecutor(200, TimeUnit.MILLISECONDS, EXECUTOR));
+                };
+        var owner = new DAGTask<>(graph, slow, new DAGOptions<TestNode, Integer>()
+                .nodeTimeout(Duration.ofMillis(50))
+                .cache(shared, (k, results) -> Map.copyOf(results)));
+        var waiter = new DAGTask<>(graph, slow, new DAGOptions<TestNode, Integer>()
+                .cache(shared, (k, results) -> Map.copyOf(results)));
+        owner.run();
+        started.await();
+        waiter.run();
+        Assertions.assertThrows(CompletionException.class, owner::join);
+        Assertions.assertEquals(task1.join(), waiter.join());
+    }
+
     @Test
     public void testCancelSubtask() {
         final var executor = CompletableFuture.delayedExecutor(